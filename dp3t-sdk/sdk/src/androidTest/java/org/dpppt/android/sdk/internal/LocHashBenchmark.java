@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+
+package org.dpppt.android.sdk.internal;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import java.util.Arrays;
+import java.util.Random;
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.dpppt.android.sdk.internal.crypto.EphId;
+import org.dpppt.android.sdk.internal.crypto.LocHashEngine;
+import org.dpppt.android.sdk.internal.matching.LocHash;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.google.common.primitives.Bytes;
+import com.google.common.primitives.Longs;
+
+/**
+ * Every iteration computes exactly one location hash, so the reported time is the time per hash.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LocHashBenchmark {
+
+	private static final String GEOHASH = "u0m6rzs2";
+	private static final long TIMESTAMP = 1589000000000L;
+
+	@Rule
+	public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+	@Test
+	public void hash_with_engine() {
+		BenchmarkState state = benchmarkRule.getState();
+		LocHashEngine engine = LocHashEngine.get();
+		engine.init(randomEphId());
+		byte[] target = new byte[LocHash.HASH_LENGTH];
+		while (state.keepRunning()) {
+			engine.hash(GEOHASH, TIMESTAMP, target, 0);
+		}
+	}
+
+	@Test
+	public void hash_with_engine_including_key_schedule() {
+		BenchmarkState state = benchmarkRule.getState();
+		LocHashEngine engine = LocHashEngine.get();
+		EphId ephId = randomEphId();
+		byte[] target = new byte[LocHash.HASH_LENGTH];
+		while (state.keepRunning()) {
+			engine.init(ephId);
+			engine.hash(GEOHASH, TIMESTAMP, target, 0);
+		}
+	}
+
+	@Test
+	public void hash_with_jca_cipher() throws Exception {
+		BenchmarkState state = benchmarkRule.getState();
+		byte[] key = randomEphId().getData();
+		while (state.keepRunning()) {
+			// the former CryptoModule.digest
+			byte[] plaintext = Bytes.concat(GEOHASH.getBytes(), Longs.toByteArray(TIMESTAMP));
+			Cipher cipher = Cipher.getInstance("AES/CBC/NoPadding");
+			cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(new byte[16]));
+			Arrays.copyOfRange(cipher.doFinal(plaintext), 0, LocHash.HASH_LENGTH);
+		}
+	}
+
+	private static EphId randomEphId() {
+		return new EphId(new Random(42).nextLong(), new Random(43).nextLong());
+	}
+
+}
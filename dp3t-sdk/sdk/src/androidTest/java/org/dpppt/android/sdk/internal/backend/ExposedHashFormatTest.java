@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.backend;
+
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.util.Random;
+
+import com.google.protobuf.ByteString;
+
+import org.dpppt.android.sdk.internal.backend.proto.Exposed;
+import org.dpppt.android.sdk.internal.matching.LocHash;
+import org.dpppt.android.sdk.internal.matching.LocHashSet;
+import org.dpppt.android.sdk.internal.matching.LocHashStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class ExposedHashFormatTest {
+
+	private static final String TAG = "ExposedHashFormatTest";
+	private static final int NUMBER_OF_HASHES = 100000;
+	private static final int HASHES_PER_CHUNK = 4096;
+
+	private MockWebServer server;
+	private OkHttpClient client;
+	private byte[] hashes;
+
+	@Before
+	public void setup() throws IOException {
+		server = new MockWebServer();
+		server.start();
+		client = new OkHttpClient();
+		hashes = new byte[NUMBER_OF_HASHES * LocHash.HASH_LENGTH];
+		new Random(1).nextBytes(hashes);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.shutdown();
+	}
+
+	@Test
+	public void protobufIsSmallerAndDecodesSameHashes() throws IOException {
+		Buffer json = createJsonBody();
+		Buffer protobuf = createProtobufBody();
+		long jsonSize = json.size();
+		long protobufSize = protobuf.size();
+		server.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody(json));
+		server.enqueue(new MockResponse().setHeader("Content-Type", "application/x-protobuf").setBody(protobuf));
+
+		long jsonStart = System.nanoTime();
+		LocHashSet jsonHashes = decode(fetch());
+		long jsonDuration = System.nanoTime() - jsonStart;
+
+		long protobufStart = System.nanoTime();
+		LocHashSet protobufHashes = decode(fetch());
+		long protobufDuration = System.nanoTime() - protobufStart;
+
+		Log.d(TAG, String.format("JSON: %d bytes, %.3f ms", jsonSize, jsonDuration / 1e6));
+		Log.d(TAG, String.format("protobuf: %d bytes, %.3f ms", protobufSize, protobufDuration / 1e6));
+
+		assertEquals(NUMBER_OF_HASHES, jsonHashes.size());
+		assertEquals(NUMBER_OF_HASHES, protobufHashes.size());
+		for (int offset = 0; offset < hashes.length; offset += LocHash.HASH_LENGTH) {
+			assertTrue(jsonHashes.contains(hashes, offset));
+			assertTrue(protobufHashes.contains(hashes, offset));
+		}
+		assertTrue(protobufSize * 2 < jsonSize);
+	}
+
+	@Test
+	public void emptyBuckets() throws IOException {
+		server.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody("[ ]"));
+		server.enqueue(new MockResponse().setHeader("Content-Type", "application/x-protobuf")
+				.setBody(new Buffer().write(Exposed.ProtoExposedHashList.newBuilder().build().toByteArray())));
+
+		assertEquals(0, decode(fetch()).size());
+		assertEquals(0, decode(fetch()).size());
+	}
+
+	private ResponseBody fetch() throws IOException {
+		Request request = new Request.Builder().url(server.url("/v1/exposedHashes/0")).build();
+		Response response = client.newCall(request).execute();
+		return response.body();
+	}
+
+	private LocHashSet decode(ResponseBody body) throws IOException {
+		LocHashSet result = new LocHashSet();
+		try (LocHashStream stream = (LocHashStream) LocHashStreamConverterFactory.create()
+				.responseBodyConverter(LocHashStream.class, new Annotation[0], null)
+				.convert(body)) {
+			while (stream.next()) {
+				result.add(stream.high(), stream.low());
+			}
+		}
+		return result;
+	}
+
+	private Buffer createJsonBody() {
+		Buffer buffer = new Buffer();
+		buffer.writeUtf8("[");
+		for (int offset = 0; offset < hashes.length; offset += LocHash.HASH_LENGTH) {
+			if (offset > 0) {
+				buffer.writeUtf8(",");
+			}
+			buffer.writeUtf8("\"")
+					.writeUtf8(LocHash.toHex(LocHash.readHigh(hashes, offset), LocHash.readLow(hashes, offset)))
+					.writeUtf8("\"");
+		}
+		buffer.writeUtf8("]");
+		return buffer;
+	}
+
+	private Buffer createProtobufBody() {
+		Exposed.ProtoExposedHashList.Builder builder = Exposed.ProtoExposedHashList.newBuilder().setBatchReleaseTime(0);
+		int chunkLength = HASHES_PER_CHUNK * LocHash.HASH_LENGTH;
+		for (int offset = 0; offset < hashes.length; offset += chunkLength) {
+			builder.addHashes(ByteString.copyFrom(hashes, offset, Math.min(chunkLength, hashes.length - offset)));
+		}
+		return new Buffer().write(builder.build().toByteArray());
+	}
+
+}
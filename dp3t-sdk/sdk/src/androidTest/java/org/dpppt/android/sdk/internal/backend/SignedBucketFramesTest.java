@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.backend;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import java.io.IOException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Random;
+
+import com.google.protobuf.ByteString;
+
+import org.dpppt.android.sdk.backend.SignatureException;
+import org.dpppt.android.sdk.backend.SignatureVerificationInterceptor;
+import org.dpppt.android.sdk.internal.backend.proto.Exposed;
+import org.dpppt.android.sdk.internal.matching.LocHash;
+import org.dpppt.android.sdk.internal.matching.LocHashStream;
+import org.dpppt.android.sdk.internal.util.Base64Util;
+import org.dpppt.android.sdk.util.SignatureUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.jsonwebtoken.Jwts;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class SignedBucketFramesTest {
+
+	private static final long BATCH_LENGTH = BackendBucketRepository.BATCH_LENGTH;
+	private static final int HASHES_PER_BUCKET = 1000;
+
+	private MockWebServer server;
+	private KeyPair keyPair;
+	private OkHttpClient client;
+
+	@Before
+	public void setup() throws Exception {
+		server = new MockWebServer();
+		server.start();
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+		generator.initialize(new ECGenParameterSpec("secp256r1"));
+		keyPair = generator.generateKeyPair();
+		client = new OkHttpClient.Builder()
+				.addInterceptor(new SignatureVerificationInterceptor(keyPair.getPublic()))
+				.build();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.shutdown();
+	}
+
+	@Test
+	public void readsAllBucketsInOrder() throws IOException {
+		Random random = new Random(1);
+		Buffer body = new Buffer();
+		byte[][] buckets = new byte[3][];
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = randomHashes(random);
+			writeFrame(body, i * BATCH_LENGTH, buckets[i], false);
+		}
+		enqueue(body);
+
+		try (BucketFrameStream stream = fetch()) {
+			for (int i = 0; i < buckets.length; i++) {
+				assertTrue(stream.nextBucket());
+				assertEquals(i * BATCH_LENGTH, stream.getBatchReleaseTime());
+				assertHashes(buckets[i], stream.getHashes());
+			}
+			assertFalse(stream.nextBucket());
+		}
+	}
+
+	@Test
+	public void tamperedBucketIsRejectedAfterVerifiedBuckets() throws IOException {
+		Random random = new Random(2);
+		byte[] first = randomHashes(random);
+		Buffer body = new Buffer();
+		writeFrame(body, 0, first, false);
+		writeFrame(body, BATCH_LENGTH, randomHashes(random), true);
+		enqueue(body);
+
+		try (BucketFrameStream stream = fetch()) {
+			assertTrue(stream.nextBucket());
+			assertHashes(first, stream.getHashes());
+			try {
+				stream.nextBucket();
+				fail("tampered bucket must not be readable");
+			} catch (SignatureException e) {
+				// expected
+			}
+		}
+	}
+
+	private void enqueue(Buffer body) {
+		server.enqueue(new MockResponse()
+				.setHeader("Content-Type", SignatureUtil.MEDIA_TYPE_SIGNED_BUCKET_FRAMES)
+				.setBody(body));
+	}
+
+	private BucketFrameStream fetch() throws IOException {
+		Request request = new Request.Builder().url(server.url("/v1/exposedHashes?from=0&until=1")).build();
+		return new BucketFrameStream(client.newCall(request).execute().body());
+	}
+
+	private void writeFrame(Buffer target, long batchReleaseTime, byte[] hashes, boolean tamper) {
+		byte[] payload = Exposed.ProtoExposedHashList.newBuilder()
+				.setBatchReleaseTime(batchReleaseTime)
+				.addHashes(ByteString.copyFrom(hashes))
+				.build()
+				.toByteArray();
+		Buffer signedContent = new Buffer().writeLong(batchReleaseTime).write(payload);
+		String jws = Jwts.builder()
+				.claim("content-hash", Base64Util.toBase64(signedContent.sha256().toByteArray()))
+				.signWith(keyPair.getPrivate())
+				.compact();
+		if (tamper) {
+			payload[payload.length - 1] ^= 1;
+		}
+		target.writeLong(batchReleaseTime);
+		target.writeInt(jws.length());
+		target.writeUtf8(jws);
+		target.writeInt(payload.length);
+		target.write(payload);
+	}
+
+	private static byte[] randomHashes(Random random) {
+		byte[] hashes = new byte[HASHES_PER_BUCKET * LocHash.HASH_LENGTH];
+		random.nextBytes(hashes);
+		return hashes;
+	}
+
+	private static void assertHashes(byte[] expected, LocHashStream actual) throws IOException {
+		try (LocHashStream stream = actual) {
+			for (int offset = 0; offset < expected.length; offset += LocHash.HASH_LENGTH) {
+				assertTrue(stream.next());
+				assertEquals(LocHash.readHigh(expected, offset), stream.high());
+				assertEquals(LocHash.readLow(expected, offset), stream.low());
+			}
+			assertFalse(stream.next());
+		}
+	}
+
+}
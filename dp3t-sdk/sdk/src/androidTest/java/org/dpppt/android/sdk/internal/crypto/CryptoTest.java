@@ -12,20 +12,32 @@ package org.dpppt.android.sdk.internal.crypto;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.platform.app.InstrumentationRegistry;
 
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.stream.Collectors;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 
 import org.dpppt.android.sdk.internal.backend.BackendBucketRepository;
 import org.dpppt.android.sdk.internal.database.models.Contact;
+import org.dpppt.android.sdk.internal.matching.LocHash;
 import org.dpppt.android.sdk.internal.util.DayDate;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import com.google.common.primitives.Bytes;
+import com.google.common.primitives.Longs;
+
 import static org.dpppt.android.sdk.internal.util.Base64Util.fromBase64;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(AndroidJUnit4.class)
@@ -60,6 +72,123 @@ public class CryptoTest {
 		}
 	}
 
+	@Test
+	public void keyStateIsCachedUntilReset() {
+		CryptoModule module = CryptoModule.getInstance(InstrumentationRegistry.getInstrumentation().getContext());
+		module.reset();
+		module.init();
+		DayDate today = new DayDate();
+		List<EphId> ephIds = module.getEphIdsForToday(today);
+		assertSame(ephIds, module.getEphIdsForToday(today));
+		assertTrue(ephIds.contains(module.getCurrentEphId()));
+		byte[] sk = module.getCurrentSK(today);
+		assertArrayEquals(sk, module.getSKList().get(0).second);
+
+		module.reset();
+		module.init();
+		assertFalse(Arrays.equals(sk, module.getCurrentSK(today)));
+		assertFalse(module.getEphIdsForToday(today).contains(ephIds.get(0)));
+	}
+
+	@Test
+	public void preparedEphIdsAreUsedWithoutStoringTheKeyEarly() {
+		CryptoModule module = CryptoModule.getInstance(InstrumentationRegistry.getInstrumentation().getContext());
+		module.reset();
+		module.init();
+		DayDate today = new DayDate();
+		DayDate tomorrow = today.getNextDay();
+		byte[] skToday = module.getCurrentSK(today);
+
+		List<EphId> preparedEphIds = module.prepareEphIdsForDay(tomorrow);
+		assertEquals(1, module.getSKList().size());
+		assertEquals(today, module.getSKList().get(0).first);
+
+		List<EphId> ephIdsTomorrow = module.getEphIdsForToday(tomorrow);
+		// the scheduler hands out the prepared EphIDs before the key is stored, they must keep their order
+		assertEquals(preparedEphIds, ephIdsTomorrow);
+		assertEquals(2, module.getSKList().size());
+		assertArrayEquals(module.getSKt1(skToday), module.getCurrentSK(tomorrow));
+		assertEquals(new HashSet<>(module.createEphIds(module.getSKt1(skToday), false)), new HashSet<>(ephIdsTomorrow));
+	}
+
+	@Test
+	public void catchUpAfterMissedDays() {
+		CryptoModule module = CryptoModule.getInstance(InstrumentationRegistry.getInstrumentation().getContext());
+		module.reset();
+		module.init();
+		DayDate today = new DayDate();
+		byte[] sk = module.getCurrentSK(today);
+
+		DayDate day = today;
+		List<byte[]> expectedKeys = new ArrayList<>();
+		for (int i = 0; i < 30; i++) {
+			day = day.getNextDay();
+			sk = module.getSKt1(sk);
+			expectedKeys.add(0, sk);
+		}
+		assertArrayEquals(sk, module.getCurrentSK(day));
+
+		SKList skList = module.getSKList();
+		assertEquals(CryptoModule.NUMBER_OF_DAYS_TO_KEEP_DATA, skList.size());
+		for (int i = 0; i < skList.size(); i++) {
+			assertEquals(day, skList.get(i).first);
+			assertArrayEquals(expectedKeys.get(i), skList.get(i).second);
+			day = day.subtractDays(1);
+		}
+	}
+
+	@Test
+	public void locHashEngineMatchesAesCbc() throws Exception {
+		EphId ephId = new EphId(fromBase64("ZN5cLwKOJVAWC7caIHskog=="));
+		long timestamp = 1589000000000L;
+		List<String> geohashes = Arrays.asList("u0m6rzs2", "u0m6rzs3", "u0m6rzs");
+
+		LocHashEngine engine = LocHashEngine.get();
+		engine.init(ephId);
+		byte[] hashes = new byte[geohashes.size() * LocHash.HASH_LENGTH];
+		assertEquals(2, engine.hash(geohashes, timestamp, hashes));
+
+		for (int i = 0; i < 2; i++) {
+			Cipher cipher = Cipher.getInstance("AES/CBC/NoPadding");
+			cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(ephId.getData(), "AES"), new IvParameterSpec(new byte[16]));
+			byte[] expected = cipher.doFinal(Bytes.concat(geohashes.get(i).getBytes(), Longs.toByteArray(timestamp)));
+			assertArrayEquals(Arrays.copyOf(expected, LocHash.HASH_LENGTH),
+					Arrays.copyOfRange(hashes, i * LocHash.HASH_LENGTH, (i + 1) * LocHash.HASH_LENGTH));
+		}
+	}
+
+	@Test
+	public void pooledPrimitivesAreReset() throws Exception {
+		byte[] data = "some data".getBytes();
+		byte[] expected = MessageDigest.getInstance("SHA-256").digest(data);
+
+		CryptoPrimitives.sha256().update("unfinished".getBytes());
+		assertArrayEquals(expected, CryptoPrimitives.sha256().digest(data));
+		assertSame(CryptoPrimitives.sha256(), CryptoPrimitives.sha256());
+
+		Mac mac = CryptoPrimitives.hmacSha256();
+		mac.init(new SecretKeySpec(data, "HmacSHA256"));
+		mac.update("unfinished".getBytes());
+		Mac reference = Mac.getInstance("HmacSHA256");
+		reference.init(new SecretKeySpec(data, "HmacSHA256"));
+		assertArrayEquals(reference.doFinal(data), CryptoPrimitives.hmacSha256().doFinal(data));
+	}
+
+	@Test
+	public void ephIdBlockMatchesEphIdList() {
+		CryptoModule module = CryptoModule.getInstance(InstrumentationRegistry.getInstrumentation().getContext());
+		byte[] sk = fromBase64("jZzsrFhswzLQlJDNnyvLotjoSTu4zZFAFXGUOfNA7Hw=");
+		List<EphId> ephIds = module.createEphIds(sk, false);
+		EphIdBlock ephIdBlock = EphIdGenerator.get().generate(sk);
+
+		assertEquals(ephIds.size(), ephIdBlock.size());
+		for (int epoch = 0; epoch < ephIds.size(); epoch++) {
+			assertEquals(ephIds.get(epoch), ephIdBlock.toEphId(epoch));
+			assertEquals(epoch, ephIdBlock.indexOf(ephIds.get(epoch).getData()));
+		}
+		assertEquals(-1, ephIdBlock.indexOf(new byte[CryptoModule.EPHID_LENGTH]));
+	}
+
 	@Test
 	public void testReset() {
 		CryptoModule module = CryptoModule.getInstance(InstrumentationRegistry.getInstrumentation().getContext());
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.crypto;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.dpppt.android.sdk.internal.database.models.Contact;
+import org.dpppt.android.sdk.internal.util.DayDate;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+@RunWith(AndroidJUnit4.class)
+public class DerivedEphIdCacheTest {
+
+	private static final int ENTRY_SIZE = 32 + EphIdGenerator.BLOCK_LENGTH;
+
+	@Test
+	public void derivesTheSameEphIdsAsTheRatchet() {
+		DerivedEphIdCache cache = new DerivedEphIdCache(30 * ENTRY_SIZE);
+		byte[] key = new byte[32];
+		new Random(1).nextBytes(key);
+		DayDate onset = new DayDate().subtractDays(10);
+		DerivedEphIdCache.CaseEphIds caseEphIds = cache.forCase(key, onset);
+
+		byte[] sk = key;
+		DayDate day = onset;
+		for (int i = 0; i < 10; i++) {
+			EphIdBlock expected = EphIdGenerator.get().generate(sk);
+			assertArrayEquals(expected.data, caseEphIds.getEphIds(day).data);
+			sk = CryptoPrimitives.sha256().digest(sk);
+			day = day.getNextDay();
+		}
+		assertEquals(0, cache.getHitCount());
+		assertEquals(10, cache.getMissCount());
+
+		EphIdBlock cached = cache.forCase(key, onset).getEphIds(onset.getNextDay());
+		assertSame(cached, cache.forCase(key, onset).getEphIds(onset.getNextDay()));
+		assertEquals(2, cache.getHitCount());
+		assertEquals(10, cache.getMissCount());
+	}
+
+	@Test
+	public void keysSharingAPrefixDoNotCollide() {
+		DerivedEphIdCache cache = new DerivedEphIdCache(30 * ENTRY_SIZE);
+		byte[] key = new byte[32];
+		new Random(3).nextBytes(key);
+		byte[] otherKey = key.clone();
+		otherKey[31] ^= 1;
+		DayDate onset = new DayDate().subtractDays(3);
+
+		EphIdBlock ephIds = cache.forCase(key, onset).getEphIds(onset);
+		EphIdBlock otherEphIds = cache.forCase(otherKey, onset).getEphIds(onset);
+		assertFalse(ephIds.getHigh(0) == otherEphIds.getHigh(0) && ephIds.getLow(0) == otherEphIds.getLow(0));
+		assertArrayEquals(EphIdGenerator.get().generate(otherKey).data, otherEphIds.data);
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void evictsTheLeastRecentlyUsedDays() {
+		DerivedEphIdCache cache = new DerivedEphIdCache(3 * ENTRY_SIZE);
+		byte[] key = new byte[32];
+		new Random(2).nextBytes(key);
+		DayDate onset = new DayDate().subtractDays(5);
+		DerivedEphIdCache.CaseEphIds caseEphIds = cache.forCase(key, onset);
+
+		DayDate day = onset;
+		for (int i = 0; i < 5; i++) {
+			caseEphIds.getEphIds(day);
+			day = day.getNextDay();
+		}
+		assertEquals(2, cache.getEvictionCount());
+		assertEquals(3 * ENTRY_SIZE, cache.size());
+
+		caseEphIds.getEphIds(onset);
+		assertEquals(6, cache.getMissCount());
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void retriedBatchHitsTheCache() {
+		Random random = new Random(4);
+		DayDate onset = new DayDate().subtractDays(4);
+		long bucketTime = new DayDate().getStartOfDayTimestamp();
+
+		List<KnownCaseMatcher.Case> cases = new ArrayList<>();
+		List<Contact> contacts = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			byte[] key = new byte[32];
+			random.nextBytes(key);
+			cases.add(new KnownCaseMatcher.Case(key, onset.getStartOfDayTimestamp()));
+			EphId ephId = EphIdGenerator.get().generate(key).toEphId(i % CryptoModule.NUMBER_OF_EPOCHS_PER_DAY);
+			contacts.add(new Contact(i, onset.getStartOfDayTimestamp() + 1000, ephId, 1, 0));
+		}
+		ContactIndex contactIndex = ContactIndex.load(onset.getStartOfDayTimestamp(), bucketTime, (timeFrom, timeUntil) -> {
+			List<Contact> contactsInRange = new ArrayList<>();
+			for (Contact contact : contacts) {
+				if (contact.getDate() >= timeFrom && contact.getDate() < timeUntil) {
+					contactsInRange.add(contact);
+				}
+			}
+			return contactsInRange;
+		});
+
+		DerivedEphIdCache cache = DerivedEphIdCache.getInstance();
+		cache.clear();
+		long hitsBefore = cache.getHitCount();
+		long missesBefore = cache.getMissCount();
+		List<List<Contact>> matches = KnownCaseMatcher.match(cases, contactIndex);
+		assertEquals(hitsBefore, cache.getHitCount());
+		assertEquals(missesBefore + cases.size(), cache.getMissCount());
+
+		// the transaction of the batch was rolled back and the same cases are matched again
+		List<List<Contact>> retriedMatches = KnownCaseMatcher.match(cases, contactIndex);
+		assertEquals(hitsBefore + cases.size(), cache.getHitCount());
+		assertEquals(missesBefore + cases.size(), cache.getMissCount());
+		for (int i = 0; i < cases.size(); i++) {
+			assertEquals(1, matches.get(i).size());
+			assertEquals(matches.get(i), retriedMatches.get(i));
+		}
+	}
+
+}
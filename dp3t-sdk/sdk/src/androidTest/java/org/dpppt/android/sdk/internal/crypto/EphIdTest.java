@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.crypto;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.dpppt.android.sdk.internal.util.DayDate;
+import org.dpppt.android.sdk.internal.util.Json;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.dpppt.android.sdk.internal.util.Base64Util.fromBase64;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class EphIdTest {
+
+	@Test
+	public void bytesRoundTrip() {
+		byte[] data = fromBase64("ZN5cLwKOJVAWC7caIHskog==");
+		EphId ephId = new EphId(data);
+		assertArrayEquals(data, ephId.getData());
+		assertEquals(ephId, new EphId(ephId.getHigh(), ephId.getLow()));
+		assertEquals(ephId.hashCode(), new EphId(data.clone()).hashCode());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsWrongLength() {
+		new EphId(new byte[CryptoModule.EPHID_LENGTH - 1]);
+	}
+
+	@Test
+	public void jsonKeepsByteArrayFormat() {
+		byte[] data = fromBase64("ZN5cLwKOJVAWC7caIHskog==");
+		String json = Json.toJson(new EphId(data));
+		assertEquals(Json.toJson(new LegacyEphId(data)), json);
+		assertEquals(new EphId(data), Json.safeFromJson(json, EphId.class, () -> null));
+
+		EphIdsForDay ephIdsForDay = new EphIdsForDay();
+		ephIdsForDay.dayDate = new DayDate();
+		ephIdsForDay.ephIds = new ArrayList<>();
+		ephIdsForDay.ephIds.add(new EphId(data));
+		EphIdsForDay restored = Json.safeFromJson(Json.toJson(ephIdsForDay), EphIdsForDay.class, () -> null);
+		assertEquals(ephIdsForDay.ephIds, restored.ephIds);
+	}
+
+	@Test
+	public void setAndMapLookups() {
+		Random random = new Random(42);
+		List<EphId> ephIds = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			ephIds.add(new EphId(random.nextLong(), random.nextLong()));
+		}
+		EphIdSet set = new EphIdSet();
+		EphIdMap<Integer> map = new EphIdMap<>();
+		for (int i = 0; i < ephIds.size(); i++) {
+			assertTrue(set.add(ephIds.get(i)));
+			assertNull(map.put(ephIds.get(i), i));
+		}
+		assertFalse(set.add(ephIds.get(0)));
+		assertEquals(Integer.valueOf(0), map.put(ephIds.get(0), 0));
+		assertEquals(ephIds.size(), set.size());
+		assertEquals(ephIds.size(), map.size());
+		for (int i = 0; i < ephIds.size(); i++) {
+			assertTrue(set.contains(ephIds.get(i)));
+			assertEquals(Integer.valueOf(i), map.get(ephIds.get(i)));
+		}
+		EphId unknown = new EphId(random.nextLong(), random.nextLong());
+		assertFalse(set.contains(unknown));
+		assertNull(map.get(unknown));
+	}
+
+	@Test
+	public void setOfBlock() {
+		EphIdBlock block = EphIdGenerator.get().generate(fromBase64("jZzsrFhswzLQlJDNnyvLotjoSTu4zZFAFXGUOfNA7Hw="));
+		EphIdSet set = EphIdSet.of(block);
+		assertEquals(block.size(), set.size());
+		for (int epoch = 0; epoch < block.size(); epoch++) {
+			assertTrue(set.contains(block.toEphId(epoch)));
+		}
+	}
+
+	private static class LegacyEphId {
+
+		private byte[] data;
+
+		LegacyEphId(byte[] data) {
+			this.data = data;
+		}
+
+	}
+
+}
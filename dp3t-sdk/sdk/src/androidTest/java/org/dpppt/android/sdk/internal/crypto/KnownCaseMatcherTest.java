@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.crypto;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.dpppt.android.sdk.internal.database.models.Contact;
+import org.dpppt.android.sdk.internal.util.DayDate;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class KnownCaseMatcherTest {
+
+	@Test
+	public void matchesContactsOfTheRightDayOnly() {
+		Random random = new Random(1);
+		DayDate onset = new DayDate().subtractDays(5);
+		long bucketTime = new DayDate().getStartOfDayTimestamp();
+
+		List<KnownCaseMatcher.Case> cases = new ArrayList<>();
+		List<Contact> contacts = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			byte[] key = new byte[32];
+			random.nextBytes(key);
+			cases.add(new KnownCaseMatcher.Case(key, onset.getStartOfDayTimestamp()));
+			byte[] skOfSecondDay = CryptoPrimitives.sha256().digest(key);
+			EphId ephId = EphIdGenerator.get().generate(skOfSecondDay).toEphId(i % CryptoModule.NUMBER_OF_EPOCHS_PER_DAY);
+			long secondDay = onset.getNextDay().getStartOfDayTimestamp();
+			// the first contact is on the day of the EphID, the second one is not
+			contacts.add(new Contact(2 * i, secondDay + 1000, ephId, 1, 0));
+			contacts.add(new Contact(2 * i + 1, secondDay - 1000, ephId, 1, 0));
+		}
+		int[] queries = new int[1];
+		ContactIndex contactIndex = ContactIndex.load(onset.getStartOfDayTimestamp(), bucketTime, (timeFrom, timeUntil) -> {
+			queries[0]++;
+			List<Contact> contactsInRange = new ArrayList<>();
+			for (Contact contact : contacts) {
+				if (contact.getDate() >= timeFrom && contact.getDate() < timeUntil) {
+					contactsInRange.add(contact);
+				}
+			}
+			return contactsInRange;
+		});
+		assertEquals(5, queries[0]);
+		assertEquals(contacts.size(), contactIndex.size());
+
+		List<List<Contact>> matches = KnownCaseMatcher.match(cases, contactIndex);
+		assertEquals(cases.size(), matches.size());
+		for (int i = 0; i < cases.size(); i++) {
+			assertEquals(1, matches.get(i).size());
+			assertEquals(2 * i, matches.get(i).get(0).getId());
+		}
+		ContactIndex emptyIndex = ContactIndex.load(onset.getStartOfDayTimestamp(), bucketTime, (timeFrom, timeUntil) -> new ArrayList<>());
+		assertTrue(emptyIndex.isEmpty());
+		assertTrue(KnownCaseMatcher.match(cases, emptyIndex).get(0).isEmpty());
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.dpppt.android.sdk.internal.matching.LocHash;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Every iteration inserts {@link #NUMBER_OF_HASHES} received hashes into an empty table.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BatchInsertBenchmark {
+
+	private static final int NUMBER_OF_HASHES = 100000;
+	private static final long TIME = 1589000000000L;
+	private static final long DAY = DayPartitions.getDay(TIME);
+
+	@Rule
+	public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+	private Database database;
+	private SQLiteDatabase db;
+	private byte[] hashes;
+
+	@Before
+	public void setup() {
+		Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+		database = new Database(context);
+		db = DatabaseOpenHelper.getInstance(context).getWritableDatabase();
+		hashes = new byte[NUMBER_OF_HASHES * LocHash.HASH_LENGTH];
+		new Random(1).nextBytes(hashes);
+		db.delete(ReceivedBtLocHashes.TABLE_NAME, null, null);
+	}
+
+	@Test
+	public void insert_batch() {
+		BenchmarkState state = benchmarkRule.getState();
+		while (state.keepRunning()) {
+			assertEquals(NUMBER_OF_HASHES, database.addReceivedBtLocHashes(hashes, TIME, TIME, 1));
+			state.pauseTiming();
+			db.delete(ReceivedBtLocHashes.TABLE_NAME, null, null);
+			state.resumeTiming();
+		}
+	}
+
+	/**
+	 * The former row by row inserts, but inside one transaction. Without it every row is its own commit, which is too
+	 * slow to run for this many rows.
+	 */
+	@Test
+	public void insert_content_values_in_transaction() {
+		BenchmarkState state = benchmarkRule.getState();
+		while (state.keepRunning()) {
+			db.beginTransaction();
+			try {
+				for (int offset = 0; offset < hashes.length; offset += LocHash.HASH_LENGTH) {
+					ContentValues values = new ContentValues();
+					values.put(ReceivedBtLocHashes.TIME, TIME);
+					values.put(ReceivedBtLocHashes.TIME_BUCKET, TIME);
+					values.put(ReceivedBtLocHashes.HASH, Arrays.copyOfRange(hashes, offset, offset + LocHash.HASH_LENGTH));
+					values.put(ReceivedBtLocHashes.HANDSHAKE_ID, 1);
+					values.put(ReceivedBtLocHashes.DAY, DAY);
+					db.insertWithOnConflict(ReceivedBtLocHashes.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+				}
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+			state.pauseTiming();
+			db.delete(ReceivedBtLocHashes.TABLE_NAME, null, null);
+			state.resumeTiming();
+		}
+	}
+
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.dpppt.android.sdk.internal.matching.LocHash;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(AndroidJUnit4.class)
+public class DatabaseMigrationTest {
+
+	private static final String HASH_1 = "00112233445566778899";
+	private static final String HASH_2 = "FFEEDDCCBBAA99887766";
+
+	private SQLiteDatabase db;
+
+	@Before
+	public void setup() {
+		db = SQLiteDatabase.create(null);
+		createVersion1(db);
+	}
+
+	@After
+	public void tearDown() {
+		db.close();
+	}
+
+	@Test
+	public void upgradeEndsInTheSchemaOfAFreshInstall() {
+		DatabaseOpenHelper.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext())
+				.onUpgrade(db, 1, Migrations.LATEST_VERSION);
+
+		SQLiteDatabase freshDb = SQLiteDatabase.create(null);
+		DatabaseOpenHelper.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext())
+				.recreateTables(freshDb);
+		assertEquals(describeSchema(freshDb), describeSchema(db));
+		freshDb.close();
+	}
+
+	@Test
+	public void hashesAreConvertedToBlobs() {
+		insertV1(ReceivedBtLocHashes.TABLE_NAME, 1000, HASH_1, 7);
+		insertV1(ReceivedBtLocHashes.TABLE_NAME, 2000, HASH_1, 8); // same hash in the same bucket
+		insertV1(ReceivedBtLocHashes.TABLE_NAME, 400000, HASH_2.toLowerCase(), 9);
+		insertV1(ReceivedBtLocHashes.TABLE_NAME, 3000, "not a hash", 10);
+		insertV1(BroadcastBtLocHashes.TABLE_NAME, 1000, HASH_2, -1);
+
+		DatabaseOpenHelper.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext())
+				.onUpgrade(db, 1, 2);
+
+		Cursor cursor = db.query(ReceivedBtLocHashes.TABLE_NAME, null, null, null, null, null,
+				ReceivedBtLocHashes.ID);
+		assertEquals(2, cursor.getCount());
+		cursor.moveToNext();
+		assertRow(cursor, 1000, 0, HASH_1);
+		assertEquals(7, cursor.getLong(cursor.getColumnIndexOrThrow(ReceivedBtLocHashes.HANDSHAKE_ID)));
+		cursor.moveToNext();
+		assertRow(cursor, 400000, 300000, HASH_2);
+		cursor.close();
+
+		cursor = db.query(BroadcastBtLocHashes.TABLE_NAME, null, null, null, null, null, null);
+		assertEquals(1, cursor.getCount());
+		cursor.moveToNext();
+		assertRow(cursor, 1000, 0, HASH_2);
+		cursor.close();
+
+		// the unique index drops hashes recorded twice in a bucket
+		ContentValues values = new ContentValues();
+		values.put(ReceivedBtLocHashes.TIME, 1500);
+		values.put(ReceivedBtLocHashes.TIME_BUCKET, 0);
+		values.put(ReceivedBtLocHashes.HASH, toBlob(HASH_1));
+		values.put(ReceivedBtLocHashes.HANDSHAKE_ID, 11);
+		assertEquals(-1, db.insertWithOnConflict(ReceivedBtLocHashes.TABLE_NAME, null, values,
+				SQLiteDatabase.CONFLICT_IGNORE));
+	}
+
+	@Test
+	public void dayKeyIsBackfilled() {
+		ContentValues values = new ContentValues();
+		values.put("time", 1589000000000L);
+		values.put("latitude", 47.4);
+		values.put("longitude", 8.5);
+		db.insertOrThrow(DeviceLocations.TABLE_NAME, null, values);
+		insertV1(ReceivedBtLocHashes.TABLE_NAME, 1589000000000L, HASH_1, 7);
+
+		DatabaseOpenHelper.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext())
+				.onUpgrade(db, 1, Migrations.LATEST_VERSION);
+
+		long day = DayPartitions.getDay(1589000000000L);
+		Cursor cursor = db.query(DeviceLocations.TABLE_NAME, null, null, null, null, null, null);
+		cursor.moveToNext();
+		assertEquals(day, cursor.getLong(cursor.getColumnIndexOrThrow(DeviceLocations.DAY)));
+		cursor.close();
+		cursor = db.query(ReceivedBtLocHashes.TABLE_NAME, null, null, null, null, null, null);
+		cursor.moveToNext();
+		assertEquals(day, cursor.getLong(cursor.getColumnIndexOrThrow(ReceivedBtLocHashes.DAY)));
+		cursor.close();
+	}
+
+	/**
+	 * The schema of the first release, which every migration test starts from.
+	 */
+	private static void createVersion1(SQLiteDatabase db) {
+		db.execSQL("CREATE TABLE known_cases (id INTEGER PRIMARY KEY NOT NULL, onset INTEGER NOT NULL," +
+				"batchTimestamp INTEGER NOT NULL, key BLOB NOT NULL, CONSTRAINT no_duplicates UNIQUE (batchTimestamp, key) )");
+		db.execSQL("CREATE TABLE handshakes (id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, timestamp INTEGER NOT NULL, " +
+				"ephID BLOB NOT NULL, tx_power_level INTEGER, rssi INTEGER,phy_primary TEXT,phy_secondary TEXT," +
+				"timestamp_nanos INTEGER,latitude DOUBLE,longitude DOUBLE)");
+		db.execSQL("CREATE TABLE contacts (id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, date INTEGER NOT NULL, " +
+				"ephID BLOB NOT NULL, windowCount INTEGER NOT NULL, associated_known_case INTEGER, " +
+				"CONSTRAINT no_duplicates UNIQUE (date, ephID), FOREIGN KEY (associated_known_case) REFERENCES " +
+				"known_cases (id) ON DELETE SET NULL)");
+		db.execSQL("CREATE TABLE exposure_days (id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+				"exposed_date INTEGER NOT NULL, report_date INTEGER NOT NULL, UNIQUE (exposed_date) )");
+		db.execSQL("CREATE TABLE locations (id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, time INTEGER NOT NULL, " +
+				"latitude DOUBLE NOT NULL, longitude DOUBLE NOT NULL )");
+		db.execSQL("CREATE TABLE BroadcastBtLocHashes (id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+				"time INTEGER NOT NULL, hash TEXT NOT NULL)");
+		db.execSQL("CREATE TABLE ReceivedBtLocHashes (id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+				"time INTEGER NOT NULL, hash TEXT NOT NULL, handshake_id INTEGER NOT NULL)");
+		db.execSQL("CREATE INDEX ReceivedBtLocHashes_time ON ReceivedBtLocHashes (time)");
+		db.execSQL("CREATE TABLE TestHashes (id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, time INTEGER NOT NULL, " +
+				"hash TEXT NOT NULL)");
+	}
+
+	/**
+	 * @return the columns and indices of all tables, independent of how the statements creating them were written
+	 */
+	private static List<String> describeSchema(SQLiteDatabase db) {
+		List<String> schema = new ArrayList<>();
+		Cursor tables = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'table' AND name NOT LIKE 'sqlite_%' " +
+				"AND name != 'android_metadata'", null);
+		while (tables.moveToNext()) {
+			String table = tables.getString(0);
+			Cursor columns = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+			while (columns.moveToNext()) {
+				schema.add(table + " column " + columns.getString(1) + " " + columns.getString(2) + " notnull=" +
+						columns.getInt(3) + " default=" + columns.getString(4) + " pk=" + columns.getInt(5));
+			}
+			columns.close();
+			Cursor indices = db.rawQuery("PRAGMA index_list(" + table + ")", null);
+			while (indices.moveToNext()) {
+				String index = indices.getString(indices.getColumnIndexOrThrow("name"));
+				StringBuilder description = new StringBuilder(table).append(" index unique=")
+						.append(indices.getInt(indices.getColumnIndexOrThrow("unique"))).append(" on");
+				Cursor indexColumns = db.rawQuery("PRAGMA index_info(" + index + ")", null);
+				while (indexColumns.moveToNext()) {
+					description.append(" ").append(indexColumns.getString(2));
+				}
+				indexColumns.close();
+				// names of indices created by constraints are generated
+				if (!index.startsWith("sqlite_autoindex_")) {
+					description.append(" named ").append(index);
+				}
+				schema.add(description.toString());
+			}
+			indices.close();
+		}
+		tables.close();
+		Collections.sort(schema);
+		return schema;
+	}
+
+	private void insertV1(String table, long time, String hash, long handshakeId) {
+		ContentValues values = new ContentValues();
+		values.put("time", time);
+		values.put("hash", hash);
+		if (handshakeId >= 0) {
+			values.put("handshake_id", handshakeId);
+		}
+		db.insertOrThrow(table, null, values);
+	}
+
+	private static void assertRow(Cursor cursor, long time, long timeBucket, String hash) {
+		assertEquals(time, cursor.getLong(cursor.getColumnIndexOrThrow("time")));
+		assertEquals(timeBucket, cursor.getLong(cursor.getColumnIndexOrThrow("time_bucket")));
+		assertArrayEquals(toBlob(hash), cursor.getBlob(cursor.getColumnIndexOrThrow("hash")));
+	}
+
+	private static byte[] toBlob(String hash) {
+		byte[] blob = new byte[LocHash.HASH_LENGTH];
+		LocHash.write(LocHash.parseHigh(hash), LocHash.parseLow(hash), blob, 0);
+		return blob;
+	}
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.database;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.dpppt.android.sdk.internal.matching.LocHash;
+import org.dpppt.android.sdk.internal.util.DayDate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(AndroidJUnit4.class)
+public class DayPartitionsTest {
+
+	private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+	private DatabaseOpenHelper databaseOpenHelper;
+	private SQLiteDatabase db;
+
+	@Before
+	public void setup() {
+		databaseOpenHelper = DatabaseOpenHelper.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext());
+		db = SQLiteDatabase.create(null);
+		databaseOpenHelper.recreateTables(db);
+	}
+
+	@After
+	public void tearDown() {
+		db.close();
+	}
+
+	@Test
+	public void dropsWholeDaysBeforeTheFirstDayToKeep() {
+		DayDate today = new DayDate();
+		long startOfToday = today.getStartOfDayTimestamp();
+		BatchWriter batchWriter = new BatchWriter(db);
+		for (int daysAgo = 0; daysAgo < 3; daysAgo++) {
+			// the last millisecond of the day must be kept or dropped together with the rest of the day
+			long time = startOfToday - daysAgo * DAY_MILLIS + DAY_MILLIS - 1;
+			byte[] hash = new byte[LocHash.HASH_LENGTH];
+			hash[0] = (byte) daysAgo;
+			batchWriter.insertReceivedHashes(hash, time, time, 1);
+			batchWriter.insertBroadcastHashes(hash, time, time);
+			insertLocation(time);
+		}
+
+		assertEquals(3, DayPartitions.dropDaysBefore(db, today.subtractDays(1)));
+
+		assertEquals(2, DatabaseUtils.queryNumEntries(db, ReceivedBtLocHashes.TABLE_NAME));
+		assertEquals(2, DatabaseUtils.queryNumEntries(db, BroadcastBtLocHashes.TABLE_NAME));
+		assertEquals(1, DatabaseUtils.queryNumEntries(db, DeviceLocations.TABLE_NAME,
+				DeviceLocations.DAY + " = ?", new String[] { Long.toString(startOfToday - DAY_MILLIS) }));
+	}
+
+	@Test
+	public void vacuumConvertsToIncrementalAutoVacuum() {
+		databaseOpenHelper.vacuum();
+		assertEquals(2, DatabaseUtils.longForQuery(databaseOpenHelper.getReadableDatabase(), "PRAGMA auto_vacuum", null));
+	}
+
+	private void insertLocation(long time) {
+		ContentValues values = new ContentValues();
+		values.put(DeviceLocations.TIME, time);
+		values.put(DeviceLocations.LATITUDE, 47.4);
+		values.put(DeviceLocations.LONGITUDE, 8.5);
+		values.put(DeviceLocations.DAY, DayPartitions.getDay(time));
+		db.insertOrThrow(DeviceLocations.TABLE_NAME, null, values);
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Every filtered query and delete of {@link Database} must be answered from an index. The statements mirror the ones in
+ * {@link Database}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QueryPlanTest {
+
+	private SQLiteDatabase db;
+
+	@Before
+	public void setup() {
+		db = SQLiteDatabase.create(null);
+		DatabaseOpenHelper.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext()).recreateTables(db);
+	}
+
+	@After
+	public void tearDown() {
+		db.close();
+	}
+
+	@Test
+	public void contactQueriesUseIndices() {
+		assertNoFullScan("SELECT * FROM " + Contacts.TABLE_NAME + " WHERE " + Contacts.DATE + ">=? AND " + Contacts.DATE +
+				"<? ORDER BY " + Contacts.ID);
+		assertNoFullScan("SELECT * FROM " + Contacts.TABLE_NAME + " WHERE " + Contacts.ASSOCIATED_KNOWN_CASE + ">0 ORDER BY +" +
+				Contacts.ID);
+		assertNoFullScan("DELETE FROM " + Contacts.TABLE_NAME + " WHERE " + Contacts.DATE + " < ?");
+		assertNoFullScan("UPDATE " + Contacts.TABLE_NAME + " SET " + Contacts.ASSOCIATED_KNOWN_CASE + " = 1 WHERE " +
+				Contacts.ID + "=1");
+	}
+
+	@Test
+	public void handshakeQueriesUseIndices() {
+		assertNoFullScan("SELECT * FROM " + Handshakes.TABLE_NAME + " WHERE " + Handshakes.TIMESTAMP + " < ? ORDER BY +" +
+				Handshakes.ID);
+		assertNoFullScan("DELETE FROM " + Handshakes.TABLE_NAME + " WHERE " + Handshakes.TIMESTAMP + " < ?");
+	}
+
+	@Test
+	public void hashQueriesUseIndices() {
+		assertNoFullScan("SELECT " + ReceivedBtLocHashes.HASH + " FROM " + ReceivedBtLocHashes.TABLE_NAME + " WHERE " +
+				ReceivedBtLocHashes.TIME + " >= ? AND " + ReceivedBtLocHashes.TIME + " < ? ORDER BY " + ReceivedBtLocHashes.ID);
+		assertNoFullScan("SELECT " + ReceivedBtLocHashes.DAY + " FROM " + ReceivedBtLocHashes.TABLE_NAME + " WHERE " +
+				ReceivedBtLocHashes.HASH + " = ? LIMIT 1");
+	}
+
+	@Test
+	public void maintenanceDeletesUseIndices() {
+		assertNoFullScan("DELETE FROM " + KnownCases.TABLE_NAME + " WHERE " + KnownCases.BUCKET_TIME + " < ?");
+		assertNoFullScan("DELETE FROM " + ExposureDays.TABLE_NAME + " WHERE " + ExposureDays.REPORT_DATE + " < ?");
+		assertNoFullScan("DELETE FROM " + DeviceLocations.TABLE_NAME + " WHERE " + DeviceLocations.TIME + " < ?");
+		assertNoFullScan("DELETE FROM " + DeviceLocations.TABLE_NAME + " WHERE " + DeviceLocations.DAY + " < ?");
+		assertNoFullScan("DELETE FROM " + BroadcastBtLocHashes.TABLE_NAME + " WHERE " + BroadcastBtLocHashes.DAY + " < ?");
+		assertNoFullScan("DELETE FROM " + ReceivedBtLocHashes.TABLE_NAME + " WHERE " + ReceivedBtLocHashes.DAY + " < ?");
+	}
+
+	private void assertNoFullScan(String sql) {
+		// the plan does not depend on the bound values
+		String[] args = new String[sql.length() - sql.replace("?", "").length()];
+		Arrays.fill(args, "0");
+		Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+		try {
+			while (cursor.moveToNext()) {
+				String detail = cursor.getString(3);
+				// "SEARCH contacts USING INDEX ..." is fine, "SCAN contacts" reads every row, even if it goes through an index
+				assertFalse(sql + ": " + detail, detail.startsWith("SCAN"));
+			}
+		} finally {
+			cursor.close();
+		}
+	}
+
+}
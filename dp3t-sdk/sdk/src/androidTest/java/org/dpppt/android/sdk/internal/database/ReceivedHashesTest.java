@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.database;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import java.io.ByteArrayOutputStream;
+
+import org.dpppt.android.sdk.internal.matching.LocHash;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(AndroidJUnit4.class)
+public class ReceivedHashesTest {
+
+	private static final long TIME = 1589000000000L;
+
+	@Test
+	public void listenersOnlySeeInsertedHashes() {
+		Database database = new Database(InstrumentationRegistry.getInstrumentation().getTargetContext());
+		database.recreateTablesSynchronous();
+		byte[] first = new byte[2 * LocHash.HASH_LENGTH];
+		first[0] = 1;
+		first[LocHash.HASH_LENGTH] = 2;
+		byte[] second = new byte[2 * LocHash.HASH_LENGTH];
+		second[0] = 2;
+		second[LocHash.HASH_LENGTH] = 3;
+
+		ByteArrayOutputStream notified = new ByteArrayOutputStream();
+		ReceivedHashListener listener = (timeBucket, hashes) -> notified.write(hashes, 0, hashes.length);
+		Database.addReceivedHashListener(listener);
+		try {
+			assertEquals(2, database.addReceivedBtLocHashes(first, TIME, TIME, 1));
+			// the hash 2 is already stored for the time bucket
+			assertEquals(1, database.addReceivedBtLocHashes(second, TIME, TIME, 2));
+			assertEquals(0, database.addReceivedBtLocHashes(second, TIME, TIME, 3));
+		} finally {
+			Database.removeReceivedHashListener(listener);
+		}
+
+		byte[] expected = new byte[3 * LocHash.HASH_LENGTH];
+		System.arraycopy(first, 0, expected, 0, first.length);
+		expected[2 * LocHash.HASH_LENGTH] = 3;
+		assertArrayEquals(expected, notified.toByteArray());
+	}
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class WriteAheadLoggingTest {
+
+	private DatabaseOpenHelper databaseOpenHelper;
+
+	@Before
+	public void setup() {
+		Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+		databaseOpenHelper = DatabaseOpenHelper.getInstance(context);
+		databaseOpenHelper.getWritableDatabase().delete(TestHashes.TABLE_NAME, null, null);
+	}
+
+	@Test
+	public void journalModeIsWal() {
+		assertEquals("wal", DatabaseUtils.stringForQuery(databaseOpenHelper.getReadableDatabase(), "PRAGMA journal_mode", null));
+	}
+
+	@Test
+	public void readerDoesNotWaitForRunningWrite() throws InterruptedException {
+		SQLiteDatabase db = databaseOpenHelper.getWritableDatabase();
+		CountDownLatch readDone = new CountDownLatch(1);
+		AtomicLong count = new AtomicLong(-1);
+		db.beginTransaction();
+		try {
+			ContentValues values = new ContentValues();
+			values.put(TestHashes.TIME, 0);
+			values.put(TestHashes.HASH, "hash");
+			db.insertOrThrow(TestHashes.TABLE_NAME, null, values);
+			DatabaseReaderPool.getInstance().execute(() -> {
+				count.set(DatabaseUtils.queryNumEntries(databaseOpenHelper.getReadableDatabase(), TestHashes.TABLE_NAME));
+				readDone.countDown();
+			});
+			// the reader sees the last committed state while the write transaction is still open
+			assertTrue(readDone.await(5, TimeUnit.SECONDS));
+			assertEquals(0, count.get());
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+		assertEquals(1, DatabaseUtils.queryNumEntries(db, TestHashes.TABLE_NAME));
+		assertTrue(DatabaseMetrics.getInstance().getReads().getCount() > 0);
+	}
+
+	@Test
+	public void handshakeResultIncludesQueuedWrites() throws InterruptedException {
+		Database database = new Database(InstrumentationRegistry.getInstrumentation().getTargetContext());
+		SQLiteDatabase db = databaseOpenHelper.getWritableDatabase();
+		db.delete(Handshakes.TABLE_NAME, null, null);
+		database.runOnDatabaseThread(() -> {
+			// a slow write queued before the read
+			SystemClock.sleep(200);
+			ContentValues values = new ContentValues();
+			values.put(Handshakes.EPHID, new byte[16]);
+			values.put(Handshakes.TIMESTAMP, 0);
+			values.put(Handshakes.TX_POWER_LEVEL, 0);
+			values.put(Handshakes.RSSI, 0);
+			values.put(Handshakes.PHY_PRIMARY, "");
+			values.put(Handshakes.PHY_SECONDARY, "");
+			values.put(Handshakes.TIMESTAMP_NANOS, 0);
+			values.put(Handshakes.LATITUDE, 0.0);
+			values.put(Handshakes.LONGITUDE, 0.0);
+			db.insertOrThrow(Handshakes.TABLE_NAME, null, values);
+		});
+
+		CountDownLatch resultReceived = new CountDownLatch(1);
+		AtomicLong count = new AtomicLong(-1);
+		database.getHandshakes(handshakes -> {
+			count.set(handshakes.size());
+			resultReceived.countDown();
+		});
+		assertTrue(resultReceived.await(5, TimeUnit.SECONDS));
+		assertEquals(1, count.get());
+	}
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.matching;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class ExposedHashStoreTest {
+
+	private File directory;
+
+	@Before
+	public void setup() {
+		directory = new File(InstrumentationRegistry.getInstrumentation().getTargetContext().getCacheDir(),
+				"exposed_hash_store_test");
+		new ExposedHashStore(directory).clear();
+	}
+
+	@After
+	public void tearDown() {
+		new ExposedHashStore(directory).clear();
+	}
+
+	@Test
+	public void segmentsSurviveReopening() throws IOException {
+		Random random = new Random(1);
+		LocHashList first = randomHashes(random, 20000);
+		LocHashList second = randomHashes(random, 20000);
+		ExposedHashStore store = new ExposedHashStore(directory);
+		store.putSegment(1000, first);
+		store.putSegment(2000, second);
+
+		ExposedHashStore reopened = new ExposedHashStore(directory);
+		assertTrue(reopened.hasSegment(1000));
+		assertTrue(reopened.hasSegment(2000));
+		for (int i = 0; i < first.size(); i++) {
+			assertEquals(1, reopened.count(first.getHigh(i), first.getLow(i)));
+		}
+		assertEquals(1, reopened.count(second.getHigh(0), second.getLow(0), 1000));
+		assertEquals(0, reopened.count(0x0123456789ABCDEFL, 0x1234));
+	}
+
+	@Test
+	public void concurrentWritersOfABucketDoNotShareTheirFile() throws IOException {
+		LocHashList hashes = randomHashes(new Random(5), 100);
+		ExposedHashStore store = new ExposedHashStore(directory);
+		ExposedHashStore.SegmentWriter committed = store.openSegment(1000);
+		ExposedHashStore.SegmentWriter discarded = store.openSegment(1000);
+		for (int i = 0; i < hashes.size(); i++) {
+			committed.write(hashes.getHigh(i), hashes.getLow(i));
+			discarded.write(hashes.getHigh(i), hashes.getLow(i));
+		}
+		discarded.close();
+		committed.commit();
+		committed.close();
+
+		assertTrue(store.hasSegment(1000));
+		for (int i = 0; i < hashes.size(); i++) {
+			assertEquals(1, store.count(hashes.getHigh(i), hashes.getLow(i)));
+		}
+		assertTrue(new ExposedHashStore(directory).hasSegment(1000));
+	}
+
+	@Test
+	public void oldSegmentsAreRemoved() throws IOException {
+		LocHashList hashes = randomHashes(new Random(2), 100);
+		ExposedHashStore store = new ExposedHashStore(directory);
+		store.putSegment(1000, hashes);
+		store.putSegment(2000, hashes);
+
+		store.removeSegmentsBefore(2000);
+		assertFalse(store.hasSegment(1000));
+		assertTrue(store.hasSegment(2000));
+		assertEquals(1, store.count(hashes.getHigh(0), hashes.getLow(0)));
+		assertFalse(new ExposedHashStore(directory).hasSegment(1000));
+	}
+
+	@Test
+	public void streamedSegmentsAreSortedOnDisk() throws IOException {
+		LocHashList hashes = randomHashes(new Random(3), 5000);
+		ExposedHashStore store = new ExposedHashStore(directory);
+		try (ExposedHashStore.SegmentWriter writer = store.openSegment(1000)) {
+			for (int i = 0; i < hashes.size(); i++) {
+				writer.write(hashes.getHigh(i), hashes.getLow(i));
+			}
+			// duplicates are dropped
+			for (int i = 0; i < 100; i++) {
+				writer.write(hashes.getHigh(i), hashes.getLow(i));
+			}
+			writer.commit();
+		}
+
+		assertEquals(hashes.size() * LocHash.HASH_LENGTH, new File(directory, "1000.seg").length());
+		ExposedHashStore reopened = new ExposedHashStore(directory);
+		for (int i = 0; i < hashes.size(); i++) {
+			assertEquals(1, reopened.count(hashes.getHigh(i), hashes.getLow(i)));
+		}
+	}
+
+	@Test
+	public void uncommittedSegmentsAreDiscarded() throws IOException {
+		LocHashList hashes = randomHashes(new Random(4), 100);
+		ExposedHashStore store = new ExposedHashStore(directory);
+		try (ExposedHashStore.SegmentWriter writer = store.openSegment(1000)) {
+			writer.write(hashes.getHigh(0), hashes.getLow(0));
+		}
+		assertFalse(store.hasSegment(1000));
+		assertEquals(0, directory.list().length);
+	}
+
+	private static LocHashList randomHashes(Random random, int count) {
+		LocHashList hashes = new LocHashList();
+		byte[] hash = new byte[LocHash.HASH_LENGTH];
+		for (int i = 0; i < count; i++) {
+			random.nextBytes(hash);
+			hashes.add(hash, 0);
+		}
+		return hashes;
+	}
+
+}
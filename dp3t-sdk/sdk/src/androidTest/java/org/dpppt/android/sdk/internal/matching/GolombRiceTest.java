@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.matching;
+
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class GolombRiceTest {
+
+	@Test
+	public void roundTrip() throws IOException {
+		LocHashList hashes = randomHashes(new Random(1), 100000);
+		// outliers around the escape code and the unsigned boundary
+		hashes.add(0, 0);
+		hashes.add(Long.MAX_VALUE, 1);
+		hashes.add(Long.MIN_VALUE, 2);
+		hashes.add(-1L, 0xFFFF);
+		hashes.add(-1L, 0xFFFF);
+
+		byte[] encoded = GolombRiceEncoder.encode(hashes);
+		Log.d("GolombRiceTest", hashes.size() + " hashes encoded in " + encoded.length + " bytes");
+		assertTrue(hashes.isSorted());
+		assertTrue(encoded.length < hashes.size() * LocHash.HASH_LENGTH);
+
+		try (GolombRiceLocHashStream stream = new GolombRiceLocHashStream(new ByteArrayInputStream(encoded))) {
+			assertTrue(stream.isSorted());
+			for (int i = 0; i < hashes.size(); i++) {
+				assertTrue(stream.next());
+				assertEquals(hashes.getHigh(i), stream.high());
+				assertEquals(hashes.getLow(i), stream.low());
+			}
+			assertFalse(stream.next());
+		}
+	}
+
+	@Test
+	public void emptyBucket() throws IOException {
+		byte[] encoded = GolombRiceEncoder.encode(new LocHashList());
+		try (GolombRiceLocHashStream stream = new GolombRiceLocHashStream(new ByteArrayInputStream(encoded))) {
+			assertFalse(stream.next());
+		}
+	}
+
+	@Test
+	public void sortedMergeMatchesHashSet() throws IOException {
+		Random random = new Random(2);
+		LocHashList remote = randomHashes(random, 50000);
+		LocHashList local = randomHashes(random, 2000);
+		for (int i = 0; i < 100; i++) {
+			local.add(remote.getHigh(i * 7), remote.getLow(i * 7));
+		}
+		local.sortDistinct();
+
+		LocHashSet localIndex = new LocHashSet();
+		for (int i = 0; i < local.size(); i++) {
+			localIndex.add(local.getHigh(i), local.getLow(i));
+		}
+		byte[] encoded = GolombRiceEncoder.encode(remote);
+		int expected = 0;
+		for (int i = 0; i < remote.size(); i++) {
+			if (localIndex.contains(remote.getHigh(i), remote.getLow(i))) {
+				expected++;
+			}
+		}
+
+		try (GolombRiceLocHashStream stream = new GolombRiceLocHashStream(new ByteArrayInputStream(encoded))) {
+			assertEquals(expected, SortedMergeMatcher.countMatches(local, stream));
+		}
+		assertTrue(expected >= 100);
+	}
+
+	@Test
+	public void sortedMergeFallsBackWhenOrderBreaks() throws IOException {
+		LocHashList local = new LocHashList();
+		local.add(1, 0);
+		local.add(5, 0);
+		local.add(9, 0);
+		local.sortDistinct();
+
+		// 1 is matched by the merge, 5 arrives after 9 and 9 is sent twice
+		LocHashList remote = new LocHashList();
+		remote.add(1, 0);
+		remote.add(9, 0);
+		remote.add(5, 0);
+		remote.add(9, 0);
+		remote.add(9, 0);
+		assertEquals(5, SortedMergeMatcher.countMatches(local, new ListStream(remote)));
+
+		remote = new LocHashList();
+		remote.add(5, 0);
+		remote.add(5, 0);
+		assertEquals(2, SortedMergeMatcher.countMatches(local, new ListStream(remote)));
+	}
+
+	private static LocHashList randomHashes(Random random, int count) {
+		LocHashList hashes = new LocHashList();
+		byte[] hash = new byte[LocHash.HASH_LENGTH];
+		for (int i = 0; i < count; i++) {
+			random.nextBytes(hash);
+			hashes.add(hash, 0);
+		}
+		return hashes;
+	}
+
+	/**
+	 * Claims to be sorted regardless of the order of its hashes, like a malformed bucket.
+	 */
+	private static class ListStream implements LocHashStream {
+
+		private final LocHashList hashes;
+		private int index = -1;
+
+		ListStream(LocHashList hashes) {
+			this.hashes = hashes;
+		}
+
+		@Override
+		public boolean next() {
+			return ++index < hashes.size();
+		}
+
+		@Override
+		public long high() {
+			return hashes.getHigh(index);
+		}
+
+		@Override
+		public int low() {
+			return hashes.getLow(index);
+		}
+
+		@Override
+		public boolean isSorted() {
+			return true;
+		}
+
+		@Override
+		public void close() { }
+
+	}
+
+}
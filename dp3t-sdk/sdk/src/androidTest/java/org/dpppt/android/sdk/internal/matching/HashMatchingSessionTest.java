@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.matching;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import java.io.IOException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(AndroidJUnit4.class)
+public class HashMatchingSessionTest {
+
+	private static final long HOUR_MILLIS = 60 * 60 * 1000L;
+	private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+	private static final long RETENTION = 21 * DAY_MILLIS;
+
+	@Test
+	public void bucketsOnlySeeTheirOwnWindow() throws IOException {
+		// one hash per hour over the retention period and the week of buckets a sync catches up with
+		long now = 100 * DAY_MILLIS;
+		long from = now - 7 * DAY_MILLIS - RETENTION;
+		HashMatchingSession session = new HashMatchingSession();
+		LocHashList allHashes = new LocHashList();
+		LocHashSet allHashSet = new LocHashSet();
+		for (long time = from - DAY_MILLIS; time < now; time += HOUR_MILLIS) {
+			if (time >= from) {
+				session.onReceivedHashesAdded(time, hashAt(time));
+			}
+			allHashes.add(time, 0);
+			allHashSet.add(time, 0);
+		}
+		assertEquals(28 * 24, session.size());
+
+		long firstBucket = now - 7 * DAY_MILLIS;
+		LocHashList matched = session.match(allHashSet, firstBucket - RETENTION, firstBucket);
+		assertEquals(21 * 24, matched.size());
+		assertEquals(21 * 24, session.match(new ListStream(allHashes), firstBucket - RETENTION, firstBucket).size());
+		assertEquals(21 * 24, session.matchSorted(new ListStream(allHashes), firstBucket - RETENTION, firstBucket).size());
+
+		// recorded after the release of the bucket, the infected device cannot have uploaded it yet
+		LocHashList afterRelease = new LocHashList();
+		afterRelease.add(firstBucket, 0);
+		assertEquals(0, session.match(new ListStream(afterRelease), firstBucket - RETENTION, firstBucket).size());
+		LocHashList beforeRelease = new LocHashList();
+		beforeRelease.add(firstBucket - HOUR_MILLIS, 0);
+		assertEquals(1, session.match(new ListStream(beforeRelease), firstBucket - RETENTION, firstBucket).size());
+	}
+
+	@Test
+	public void consecutiveBucketsShareTheIndex() throws IOException {
+		long now = 100 * DAY_MILLIS;
+		long from = now - 7 * DAY_MILLIS - RETENTION;
+		HashMatchingSession session = new HashMatchingSession();
+		LocHashList allHashes = new LocHashList();
+		for (long time = from; time < now; time += HOUR_MILLIS) {
+			session.onReceivedHashesAdded(time, hashAt(time));
+			allHashes.add(time, 0);
+		}
+
+		// one bucket every two hours over the week the sync catches up with
+		for (long bucket = now - 7 * DAY_MILLIS; bucket < now; bucket += 2 * HOUR_MILLIS) {
+			LocHashList matched = session.matchSorted(new ListStream(allHashes), bucket - RETENTION, bucket);
+			assertEquals(21 * 24, matched.size());
+			assertEquals(bucket - RETENTION, matched.getHigh(0));
+		}
+		assertEquals(1, session.getSortCount());
+
+		// only hashes received during the sync make the session sort again, once
+		session.onReceivedHashesAdded(now, hashAt(now));
+		allHashes.add(now, 0);
+		assertEquals(21 * 24, session.matchSorted(new ListStream(allHashes), now + HOUR_MILLIS - RETENTION,
+				now + HOUR_MILLIS).size());
+		assertEquals(21 * 24 - 1,
+				session.matchSorted(new ListStream(allHashes), now + 2 * HOUR_MILLIS - RETENTION, now + 2 * HOUR_MILLIS)
+						.size());
+		assertEquals(2, session.getSortCount());
+	}
+
+	@Test
+	public void hashesWrittenDuringTheSessionJoinTheirWindow() throws IOException {
+		long bucket = 100 * DAY_MILLIS;
+		HashMatchingSession session = new HashMatchingSession();
+		session.onReceivedHashesAdded(bucket - DAY_MILLIS, hashAt(bucket - DAY_MILLIS));
+		assertEquals(1, session.size());
+
+		session.onReceivedHashesAdded(bucket - HOUR_MILLIS, hashAt(bucket - HOUR_MILLIS));
+		session.onReceivedHashesAdded(bucket + HOUR_MILLIS, hashAt(bucket + HOUR_MILLIS));
+		// duplicates are dropped
+		session.onReceivedHashesAdded(bucket - DAY_MILLIS, hashAt(bucket - DAY_MILLIS));
+		assertEquals(3, session.size());
+
+		LocHashSet infectedHashes = new LocHashSet();
+		infectedHashes.add(bucket - DAY_MILLIS, 0);
+		infectedHashes.add(bucket - HOUR_MILLIS, 0);
+		infectedHashes.add(bucket + HOUR_MILLIS, 0);
+		assertEquals(2, session.match(infectedHashes, bucket - RETENTION, bucket).size());
+
+		long nextBucket = bucket + 2 * HOUR_MILLIS;
+		assertEquals(3, session.match(infectedHashes, nextBucket - RETENTION, nextBucket).size());
+	}
+
+	private static byte[] hashAt(long time) {
+		byte[] hash = new byte[LocHash.HASH_LENGTH];
+		LocHash.write(time, 0, hash, 0);
+		return hash;
+	}
+
+
+	private static class ListStream implements LocHashStream {
+
+		private final LocHashList hashes;
+		private int index = -1;
+
+		ListStream(LocHashList hashes) {
+			this.hashes = hashes;
+		}
+
+		@Override
+		public boolean next() {
+			return ++index < hashes.size();
+		}
+
+		@Override
+		public long high() {
+			return hashes.getHigh(index);
+		}
+
+		@Override
+		public int low() {
+			return hashes.getLow(index);
+		}
+
+		@Override
+		public boolean isSorted() {
+			return true;
+		}
+
+		@Override
+		public void close() { }
+
+	}
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.matching;
+
+import android.content.Context;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.dpppt.android.sdk.internal.AppConfigManager;
+import org.dpppt.android.sdk.internal.backend.BackendBucketRepository;
+import org.dpppt.android.sdk.internal.database.Database;
+import org.dpppt.android.sdk.internal.database.models.ExposureDay;
+import org.dpppt.android.sdk.internal.util.DayDate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(AndroidJUnit4.class)
+public class IncrementalMatcherTest {
+
+	private static final long MINUTE = 60 * 1000L;
+
+	private Database database;
+	private ExposedHashStore exposedHashStore;
+
+	@Before
+	public void setup() {
+		Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+		AppConfigManager.getInstance(context).setNumberOfHashesForExposure(2);
+		database = new Database(context);
+		database.recreateTablesSynchronous();
+		exposedHashStore = new ExposedHashStore(new File(context.getCacheDir(), "incremental_matcher_test"));
+		exposedHashStore.clear();
+	}
+
+	@After
+	public void tearDown() {
+		exposedHashStore.clear();
+	}
+
+	@Test
+	public void handshakeWithLocationFixBeforeRetainedBucketIsExposure() throws IOException, InterruptedException {
+		long batchReleaseTime = System.currentTimeMillis() / BackendBucketRepository.BATCH_LENGTH *
+				BackendBucketRepository.BATCH_LENGTH;
+		byte[] beforeRelease = hash(1);
+		byte[] secondBeforeRelease = hash(3);
+		byte[] afterRelease = hash(2);
+		LocHashList bucket = new LocHashList();
+		bucket.add(beforeRelease, 0);
+		bucket.add(secondBeforeRelease, 0);
+		bucket.add(afterRelease, 0);
+		exposedHashStore.putSegment(batchReleaseTime, bucket);
+
+		IncrementalMatcher incrementalMatcher = new IncrementalMatcher(database, exposedHashStore);
+		Database.addReceivedHashListener(incrementalMatcher);
+		try {
+			// the bucket cannot contain hashes of a time bucket starting after its release
+			long timeBucket = batchReleaseTime + 5 * MINUTE;
+			database.addReceivedBtLocHashes(afterRelease, timeBucket, timeBucket, 1);
+			waitForDatabase();
+			assertEquals(0, database.getExposureDays().size());
+
+			// the handshake is recorded after the bucket was retained, with a location fix from before its release
+			timeBucket = batchReleaseTime - 30 * MINUTE;
+			database.addReceivedBtLocHashes(beforeRelease, timeBucket, timeBucket, 2);
+			waitForDatabase();
+			// a single hash is not enough, and one found again in another bucket is not counted twice
+			LocHashList matchedAgain = new LocHashList();
+			matchedAgain.add(beforeRelease, 0);
+			database.addHashExposures(matchedAgain);
+			waitForDatabase();
+			assertEquals(0, database.getExposureDays().size());
+
+			database.addReceivedBtLocHashes(secondBeforeRelease, timeBucket, timeBucket, 3);
+			waitForDatabase();
+			List<ExposureDay> exposureDays = database.getExposureDays();
+			assertEquals(1, exposureDays.size());
+			assertEquals(new DayDate(timeBucket), exposureDays.get(0).getExposedDate());
+		} finally {
+			Database.removeReceivedHashListener(incrementalMatcher);
+		}
+	}
+
+	private void waitForDatabase() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(1);
+		database.runOnDatabaseThread(latch::countDown);
+		latch.await();
+	}
+
+	private static byte[] hash(int seed) {
+		byte[] hash = new byte[LocHash.HASH_LENGTH];
+		LocHash.write(0x0123456789ABCDEFL * seed, seed, hash, 0);
+		return hash;
+	}
+
+}
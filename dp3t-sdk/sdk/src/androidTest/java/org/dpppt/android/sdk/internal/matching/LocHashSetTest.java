@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.matching;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import java.util.HashSet;
+import java.util.Random;
+
+import com.google.gson.Gson;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class LocHashSetTest {
+
+	@Test
+	public void hexRoundTrip() {
+		String hex = "00FF10A0B0C0D0E0F00A";
+		long high = LocHash.parseHigh(hex);
+		int low = LocHash.parseLow(hex);
+		assertEquals(hex, LocHash.toHex(high, low));
+
+		byte[] packed = new byte[LocHash.HASH_LENGTH];
+		LocHash.write(high, low, packed, 0);
+		assertEquals(high, LocHash.readHigh(packed, 0));
+		assertEquals(low, LocHash.readLow(packed, 0));
+	}
+
+	@Test
+	public void matchesStringHashSet() {
+		Random random = new Random(42);
+		HashSet<String> expected = new HashSet<>();
+		LocHashSet set = new LocHashSet();
+		byte[] hash = new byte[LocHash.HASH_LENGTH];
+		for (int i = 0; i < 100000; i++) {
+			random.nextBytes(hash);
+			String hex = LocHash.toHex(LocHash.readHigh(hash, 0), LocHash.readLow(hash, 0));
+			assertEquals(expected.add(hex), set.addHex(hex));
+		}
+		assertEquals(expected.size(), set.size());
+		for (String hex : expected) {
+			assertTrue(set.containsHex(hex));
+			assertTrue(set.containsHex(hex.toLowerCase()));
+		}
+		for (int i = 0; i < 10000; i++) {
+			random.nextBytes(hash);
+			String hex = LocHash.toHex(LocHash.readHigh(hash, 0), LocHash.readLow(hash, 0));
+			assertEquals(expected.contains(hex), set.containsHex(hex));
+		}
+	}
+
+	@Test
+	public void jsonRoundTrip() {
+		LocHashSet set = new LocHashSet();
+		set.addHex("00FF10A0B0C0D0E0F00A");
+		set.addHex("FFEEDDCCBBAA99887766");
+		Gson gson = new Gson();
+		LocHashSet read = gson.fromJson(gson.toJson(set), LocHashSet.class);
+		assertEquals(2, read.size());
+		assertTrue(read.containsHex("00FF10A0B0C0D0E0F00A"));
+		assertTrue(read.containsHex("FFEEDDCCBBAA99887766"));
+	}
+
+	@Test
+	public void zeroHashIsStored() {
+		LocHashSet set = new LocHashSet();
+		assertFalse(set.contains(0L, 0));
+		assertTrue(set.add(0L, 0));
+		assertTrue(set.contains(0L, 0));
+		assertFalse(set.add(0L, 0));
+		assertFalse(set.contains(0L, 1));
+	}
+
+}
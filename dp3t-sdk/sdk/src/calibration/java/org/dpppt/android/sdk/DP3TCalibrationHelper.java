@@ -15,6 +15,8 @@ import android.content.Context;
 import java.io.OutputStream;
 
 import org.dpppt.android.sdk.internal.AppConfigManager;
+import org.dpppt.android.sdk.internal.HashMatchingMode;
+import org.dpppt.android.sdk.internal.backend.ExposedHashFormat;
 import org.dpppt.android.sdk.internal.crypto.CryptoDatabaseHelper;
 import org.dpppt.android.sdk.internal.database.Database;
 import org.dpppt.android.sdk.internal.logger.LogDatabaseHelper;
@@ -34,6 +36,22 @@ public class DP3TCalibrationHelper {
 		AppConfigManager.getInstance(context).setCalibrationTestDeviceName(null);
 	}
 
+	public static void setHashMatchingMode(Context context, HashMatchingMode hashMatchingMode) {
+		AppConfigManager.getInstance(context).setHashMatchingMode(hashMatchingMode);
+	}
+
+	public static HashMatchingMode getHashMatchingMode(Context context) {
+		return AppConfigManager.getInstance(context).getHashMatchingMode();
+	}
+
+	public static void setExposedHashFormat(Context context, ExposedHashFormat exposedHashFormat) {
+		AppConfigManager.getInstance(context).setExposedHashFormat(exposedHashFormat);
+	}
+
+	public static ExposedHashFormat getExposedHashFormat(Context context) {
+		return AppConfigManager.getInstance(context).getExposedHashFormat();
+	}
+
 	public static void exportDb(Context context, OutputStream targetOut, Runnable onExportedListener) {
 		new Thread(() -> {
 			CryptoDatabaseHelper.copySKsToDatabase(context);
@@ -43,9 +43,12 @@ import org.dpppt.android.sdk.internal.backend.ServerTimeOffsetException;
 import org.dpppt.android.sdk.internal.backend.StatusCodeException;
 import org.dpppt.android.sdk.internal.backend.models.ExposeeRequest;
 import org.dpppt.android.sdk.internal.crypto.CryptoModule;
+import org.dpppt.android.sdk.internal.crypto.CryptoPrimitives;
 import org.dpppt.android.sdk.internal.database.Database;
 import org.dpppt.android.sdk.internal.database.models.ExposureDay;
 import org.dpppt.android.sdk.internal.logger.Logger;
+import org.dpppt.android.sdk.internal.matching.ExposedHashStore;
+import org.dpppt.android.sdk.internal.matching.IncrementalMatcher;
 import org.dpppt.android.sdk.internal.util.DayDate;
 import org.dpppt.android.sdk.internal.util.ProcessUtil;
 
@@ -90,11 +93,14 @@ public class DP3T {
 	}
 
 	private static void executeInit(Context context, PublicKey signaturePublicKey) {
+		new Thread(CryptoPrimitives::warmUp, "CryptoWarmUp").start();
+
 		CryptoModule.getInstance(context).init();
 
 		new Database(context).removeOldData();
 
 		SyncWorker.setBucketSignaturePublicKey(signaturePublicKey);
+		IncrementalMatcher.register(context);
 
 		AppConfigManager appConfigManager = AppConfigManager.getInstance(context);
 		boolean advertising = appConfigManager.isAdvertisingEnabled();
@@ -324,6 +330,7 @@ public class DP3T {
 		CryptoModule.getInstance(context).reset();
 		appConfigManager.clearPreferences();
 		Logger.clear();
+		ExposedHashStore.getInstance(context).clear();
 		Database db = new Database(context);
 		db.recreateTables(response -> onDeleteListener.run());
 	}
@@ -13,15 +13,18 @@ package org.dpppt.android.sdk.backend;
 import androidx.annotation.NonNull;
 
 import java.io.IOException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.util.Arrays;
 
+import org.dpppt.android.sdk.internal.crypto.CryptoPrimitives;
 import org.dpppt.android.sdk.util.SignatureUtil;
 
 import okhttp3.Interceptor;
+import okhttp3.MediaType;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.Okio;
 
 public class SignatureVerificationInterceptor implements Interceptor {
 
@@ -42,6 +45,20 @@ public class SignatureVerificationInterceptor implements Interceptor {
 			return response;
 		}
 
+		ResponseBody responseBody = response.body();
+		MediaType contentType = responseBody != null ? responseBody.contentType() : null;
+		if (contentType != null && SignatureUtil.MEDIA_TYPE_SIGNED_BUCKET_FRAMES
+				.equals(contentType.type() + "/" + contentType.subtype())) {
+			if (publicKey == null) {
+				throw new SignatureException("Public key not specified");
+			}
+			// every frame carries its own signature and is verified while the body is read
+			BufferedSource verifiedSource = Okio.buffer(new SignedFrameVerifyingSource(responseBody.source(), publicKey));
+			return response.newBuilder()
+					.body(ResponseBody.create(contentType, -1, verifiedSource))
+					.build();
+		}
+
 		String jwsHeader = response.headers().get(SignatureUtil.HTTP_HEADER_JWS);
 		if (jwsHeader == null) {
 			throw new SignatureException("JWS header not found");
@@ -55,13 +72,7 @@ public class SignatureVerificationInterceptor implements Interceptor {
 
 		byte[] body = response.peekBody(PEEK_MEMORY_LIMIT).bytes();
 
-		byte[] actualContentHash;
-		try {
-			MessageDigest digest = MessageDigest.getInstance(SignatureUtil.HASH_ALGO);
-			actualContentHash = digest.digest(body);
-		} catch (NoSuchAlgorithmException e) {
-			throw new RuntimeException(e);
-		}
+		byte[] actualContentHash = CryptoPrimitives.sha256().digest(body);
 
 		if (!Arrays.equals(actualContentHash, signedContentHash)) {
 			throw new SignatureException("Signature mismatch");
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.backend;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.util.Arrays;
+
+import org.dpppt.android.sdk.internal.crypto.CryptoPrimitives;
+import org.dpppt.android.sdk.util.SignatureUtil;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Source;
+import okio.Timeout;
+
+/**
+ * Verifies a {@link SignatureUtil#MEDIA_TYPE_SIGNED_BUCKET_FRAMES} body frame by frame. Each frame is laid out as
+ * <pre>
+ * int64  batch release time
+ * int32  length of the JWS
+ * bytes  JWS (ASCII), its content hash covers the batch release time followed by the payload
+ * int32  length of the payload
+ * bytes  payload
+ * </pre>
+ * A frame is only passed on once it has been read completely and its signature has been checked, so memory is bounded
+ * by the largest frame and a consumer never sees unverified data.
+ */
+class SignedFrameVerifyingSource implements Source {
+
+	private static final int MAX_JWS_LENGTH = 16 * 1024;
+	private static final long MAX_PAYLOAD_LENGTH = 64 * 1024 * 1024L;
+
+	private final BufferedSource upstream;
+	private final PublicKey publicKey;
+	private final Buffer verified = new Buffer();
+
+	SignedFrameVerifyingSource(BufferedSource upstream, PublicKey publicKey) {
+		this.upstream = upstream;
+		this.publicKey = publicKey;
+	}
+
+	@Override
+	public long read(Buffer sink, long byteCount) throws IOException {
+		if (verified.size() == 0) {
+			if (upstream.exhausted()) {
+				return -1;
+			}
+			readFrame();
+		}
+		return verified.read(sink, byteCount);
+	}
+
+	private void readFrame() throws IOException {
+		long batchReleaseTime = upstream.readLong();
+		int jwsLength = upstream.readInt();
+		if (jwsLength <= 0 || jwsLength > MAX_JWS_LENGTH) {
+			throw new SignatureException("Invalid JWS length " + jwsLength + " in frame " + batchReleaseTime);
+		}
+		String jws = upstream.readUtf8(jwsLength);
+		int payloadLength = upstream.readInt();
+		if (payloadLength < 0 || payloadLength > MAX_PAYLOAD_LENGTH) {
+			throw new IOException("Invalid payload length " + payloadLength + " in frame " + batchReleaseTime);
+		}
+
+		Buffer signedContent = new Buffer();
+		signedContent.writeLong(batchReleaseTime);
+		upstream.readFully(signedContent, payloadLength);
+
+		byte[] signedContentHash = SignatureUtil.getVerifiedContentHash(jws, publicKey);
+		if (!Arrays.equals(sha256(signedContent), signedContentHash)) {
+			throw new SignatureException("Signature mismatch in frame " + batchReleaseTime);
+		}
+
+		verified.writeLong(signedContent.readLong());
+		verified.writeInt(jwsLength);
+		verified.writeUtf8(jws);
+		verified.writeInt(payloadLength);
+		verified.writeAll(signedContent);
+	}
+
+	private static byte[] sha256(Buffer buffer) throws IOException {
+		MessageDigest digest = CryptoPrimitives.sha256();
+		// hashes the segments in place instead of copying the frame
+		buffer.copyTo(new OutputStream() {
+			@Override
+			public void write(int b) {
+				digest.update((byte) b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				digest.update(b, off, len);
+			}
+		});
+		return digest.digest();
+	}
+
+	@Override
+	public Timeout timeout() {
+		return upstream.timeout();
+	}
+
+	@Override
+	public void close() throws IOException {
+		upstream.close();
+	}
+
+}
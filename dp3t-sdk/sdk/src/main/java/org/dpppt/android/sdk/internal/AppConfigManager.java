@@ -18,6 +18,7 @@ import org.dpppt.android.sdk.backend.ResponseCallback;
 import org.dpppt.android.sdk.backend.models.ApplicationInfo;
 import org.dpppt.android.sdk.internal.backend.BackendReportRepository;
 import org.dpppt.android.sdk.internal.backend.DiscoveryRepository;
+import org.dpppt.android.sdk.internal.backend.ExposedHashFormat;
 import org.dpppt.android.sdk.internal.backend.models.ApplicationsList;
 import org.dpppt.android.sdk.internal.util.Json;
 
@@ -40,8 +41,11 @@ public class AppConfigManager {
 	private static final BluetoothTxPowerLevel DEFAULT_BLUETOOTH_POWER_LEVEL = BluetoothTxPowerLevel.ADVERTISE_TX_POWER_ULTRA_LOW;
 	private static final BluetoothAdvertiseMode DEFAULT_BLUETOOTH_ADVERTISE_MODE = BluetoothAdvertiseMode.ADVERTISE_MODE_BALANCED;
 	private static final boolean DEFAULT_BLUETOOTH_USE_SCAN_RESPONSE_ENABLED = false;
+	private static final HashMatchingMode DEFAULT_HASH_MATCHING_MODE = HashMatchingMode.PRIMITIVE_HASH_SET;
+	private static final ExposedHashFormat DEFAULT_EXPOSED_HASH_FORMAT = ExposedHashFormat.PROTOBUF;
 
 	private static final int DEFAULT_NUMBER_OF_WINDOWS_FOR_EXPOSURE = 3;
+	private static final int DEFAULT_NUMBER_OF_HASHES_FOR_EXPOSURE = 2;
 	private static final float DEFAULT_CONTACT_ATTENUATION_THRESHOLD = 73.0f;
 
 	private static final String PREFS_NAME = "dp3t_sdk_preferences";
@@ -61,6 +65,10 @@ public class AppConfigManager {
 	private static final String PREF_BLUETOOTH_USE_SCAN_RESPONSE = "scanResponseEnabled";
 	private static final String PREF_CONTACT_ATTENUATION_THRESHOLD = "contact_attenuation_threshold";
 	private static final String PREF_NUMBER_OF_WINDOWS_FOR_EXPOSURE = "number_of_windows_for_exposure";
+	private static final String PREF_NUMBER_OF_HASHES_FOR_EXPOSURE = "number_of_hashes_for_exposure";
+	private static final String PREF_HASH_MATCHING_MODE = "hash_matching_mode";
+	private static final String PREF_EXPOSED_HASH_FORMAT = "exposed_hash_format";
+	private static final String PREF_RANGE_REQUEST_REJECTED_TIME = "range_request_rejected_time";
 
 	private String appId;
 	private boolean useDiscovery;
@@ -257,6 +265,45 @@ public class AppConfigManager {
 		sharedPrefs.edit().putInt(PREF_NUMBER_OF_WINDOWS_FOR_EXPOSURE, threshold).apply();
 	}
 
+	/**
+	 * @return the number of distinct received hashes of a day that must be found in buckets before the day is recorded
+	 * as exposure day
+	 */
+	public int getNumberOfHashesForExposure() {
+		return sharedPrefs.getInt(PREF_NUMBER_OF_HASHES_FOR_EXPOSURE, DEFAULT_NUMBER_OF_HASHES_FOR_EXPOSURE);
+	}
+
+	public void setNumberOfHashesForExposure(int threshold) {
+		sharedPrefs.edit().putInt(PREF_NUMBER_OF_HASHES_FOR_EXPOSURE, threshold).apply();
+	}
+
+	public HashMatchingMode getHashMatchingMode() {
+		return HashMatchingMode.values()[sharedPrefs.getInt(PREF_HASH_MATCHING_MODE, DEFAULT_HASH_MATCHING_MODE.ordinal())];
+	}
+
+	public void setHashMatchingMode(HashMatchingMode hashMatchingMode) {
+		sharedPrefs.edit().putInt(PREF_HASH_MATCHING_MODE, hashMatchingMode.ordinal()).apply();
+	}
+
+	public ExposedHashFormat getExposedHashFormat() {
+		return ExposedHashFormat.values()[sharedPrefs.getInt(PREF_EXPOSED_HASH_FORMAT, DEFAULT_EXPOSED_HASH_FORMAT.ordinal())];
+	}
+
+	public void setExposedHashFormat(ExposedHashFormat exposedHashFormat) {
+		sharedPrefs.edit().putInt(PREF_EXPOSED_HASH_FORMAT, exposedHashFormat.ordinal()).apply();
+	}
+
+	/**
+	 * @return when the bucket backend last rejected a range request, 0 if it never did
+	 */
+	public long getRangeRequestRejectedTime() {
+		return sharedPrefs.getLong(PREF_RANGE_REQUEST_REJECTED_TIME, 0);
+	}
+
+	public void setRangeRequestRejectedTime(long rangeRequestRejectedTime) {
+		sharedPrefs.edit().putLong(PREF_RANGE_REQUEST_REJECTED_TIME, rangeRequestRejectedTime).apply();
+	}
+
 	public void clearPreferences() {
 		sharedPrefs.edit().clear().apply();
 	}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal;
+
+import androidx.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.dpppt.android.sdk.internal.backend.ServerTimeOffsetException;
+import org.dpppt.android.sdk.internal.backend.StatusCodeException;
+
+/**
+ * Loads a range of buckets with up to {@code window} downloads in flight, while the buckets are handed to the
+ * handler one by one on the calling thread, strictly in order of their batch release time. If a bucket fails to
+ * load, no later bucket is handed to the handler, so progress committed by the handler never skips a bucket.
+ * Loaded buckets that are never handed out are closed if they are {@link Closeable}.
+ * <p>
+ * A loaded bucket is registered as unclaimed under the lock that also guards the abort, so it is either handed out,
+ * closed by the abort, or closed by its loader if it finished loading after the abort.
+ */
+class BucketPipeline<T> {
+
+	interface Loader<T> {
+
+		T load(long batchReleaseTime) throws IOException, StatusCodeException, ServerTimeOffsetException;
+
+	}
+
+
+	interface Handler<T> {
+
+		void handle(long batchReleaseTime, T bucket) throws IOException, StatusCodeException, ServerTimeOffsetException;
+
+	}
+
+
+	private final int window;
+	private final Loader<T> loader;
+	private final Object lock = new Object();
+	private final Set<T> unclaimed = Collections.newSetFromMap(new IdentityHashMap<>());
+	private boolean discarding;
+
+	BucketPipeline(int window, @NonNull Loader<T> loader) {
+		if (window < 1) {
+			throw new IllegalArgumentException("window must be at least 1");
+		}
+		this.window = window;
+		this.loader = loader;
+	}
+
+	/**
+	 * Loads and handles the buckets {@code from}, {@code from + step}, ... up to, but excluding, {@code until}.
+	 */
+	void run(long from, long until, long step, @NonNull Handler<T> handler)
+			throws IOException, StatusCodeException, ServerTimeOffsetException {
+		if (from >= until) {
+			return;
+		}
+		synchronized (lock) {
+			discarding = false;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(window);
+		ArrayDeque<Future<T>> inFlight = new ArrayDeque<>();
+		long nextToLoad = from;
+		try {
+			for (long batchReleaseTime = from; batchReleaseTime < until; batchReleaseTime += step) {
+				while (inFlight.size() < window && nextToLoad < until) {
+					final long loadTime = nextToLoad;
+					inFlight.add(executor.submit(() -> load(loadTime)));
+					nextToLoad += step;
+				}
+				T bucket = claim(await(inFlight.poll()));
+				handler.handle(batchReleaseTime, bucket);
+			}
+		} finally {
+			List<T> discarded;
+			synchronized (lock) {
+				discarding = true;
+				discarded = new ArrayList<>(unclaimed);
+				unclaimed.clear();
+			}
+			executor.shutdownNow();
+			for (T bucket : discarded) {
+				closeQuietly(bucket);
+			}
+		}
+	}
+
+	private T load(long batchReleaseTime) throws IOException, StatusCodeException, ServerTimeOffsetException {
+		T bucket = loader.load(batchReleaseTime);
+		if (bucket == null) {
+			return null;
+		}
+		synchronized (lock) {
+			if (!discarding) {
+				unclaimed.add(bucket);
+				return bucket;
+			}
+		}
+		// the pipeline was aborted while this bucket was loading
+		closeQuietly(bucket);
+		return bucket;
+	}
+
+	private T claim(T bucket) {
+		synchronized (lock) {
+			unclaimed.remove(bucket);
+		}
+		return bucket;
+	}
+
+	private T await(Future<T> future) throws IOException, StatusCodeException, ServerTimeOffsetException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for bucket");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof StatusCodeException) {
+				throw (StatusCodeException) cause;
+			} else if (cause instanceof ServerTimeOffsetException) {
+				throw (ServerTimeOffsetException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	private static void closeQuietly(Object bucket) {
+		if (bucket instanceof Closeable) {
+			try {
+				((Closeable) bucket).close();
+			} catch (IOException e) {
+				// bucket is discarded anyway
+			}
+		}
+	}
+
+}
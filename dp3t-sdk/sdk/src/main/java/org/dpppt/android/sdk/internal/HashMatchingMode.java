@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal;
+
+public enum HashMatchingMode {
+	/**
+	 * Legacy matching: every bucket is loaded into a {@code HashSet<String>} of hex encoded hashes.
+	 */
+	STRING_HASH_SET,
+	/**
+	 * Every bucket is decoded into a primitive {@link org.dpppt.android.sdk.internal.matching.LocHashSet}.
+	 */
+	PRIMITIVE_HASH_SET,
+	/**
+	 * The received hashes are loaded into a local index and every bucket is streamed against it, so memory is
+	 * bounded by the local hashes instead of the bucket size.
+	 */
+	STREAMING_LOCAL_INDEX,
+	/**
+	 * Buckets are requested as sorted golomb-rice coded lists and merged with the sorted received hashes in a single
+	 * pass. Falls back to probing a local index if the backend only serves unsorted buckets.
+	 */
+	SORTED_MERGE
+}
@@ -27,11 +27,20 @@ import org.dpppt.android.sdk.TracingStatus.ErrorState;
 import org.dpppt.android.sdk.backend.SignatureException;
 import org.dpppt.android.sdk.backend.models.ApplicationInfo;
 import org.dpppt.android.sdk.internal.backend.BackendBucketRepository;
+import org.dpppt.android.sdk.internal.backend.BucketFrameStream;
 import org.dpppt.android.sdk.internal.backend.ServerTimeOffsetException;
 import org.dpppt.android.sdk.internal.backend.StatusCodeException;
 import org.dpppt.android.sdk.internal.backend.SyncErrorState;
+import org.dpppt.android.sdk.internal.crypto.CryptoModule;
 import org.dpppt.android.sdk.internal.database.Database;
 import org.dpppt.android.sdk.internal.logger.Logger;
+import org.dpppt.android.sdk.internal.matching.ExposedHashStore;
+import org.dpppt.android.sdk.internal.matching.HashMatchingSession;
+import org.dpppt.android.sdk.internal.matching.LocHash;
+import org.dpppt.android.sdk.internal.matching.LocHashList;
+import org.dpppt.android.sdk.internal.matching.LocHashSet;
+import org.dpppt.android.sdk.internal.matching.LocHashStream;
+import org.dpppt.android.sdk.internal.matching.RecordingLocHashStream;
 
 import static org.dpppt.android.sdk.internal.backend.BackendBucketRepository.BATCH_LENGTH;
 
@@ -40,6 +49,13 @@ public class SyncWorker extends Worker {
 	private static final String TAG = "SyncWorker";
 	private static final String WORK_TAG = "org.dpppt.android.sdk.internal.SyncWorker";
 
+	private static final int BUCKET_DOWNLOAD_WINDOW = 4;
+	private static final long MAX_CONTACT_AGE = CryptoModule.NUMBER_OF_DAYS_TO_KEEP_DATA * 24 * 60 * 60 * 1000L;
+	/**
+	 * Time after which range requests are tried again once the backend rejected one.
+	 */
+	private static final long RANGE_REQUEST_RETRY_INTERVAL = 7 * 24 * 60 * 60 * 1000L;
+
 	private static PublicKey bucketSignaturePublicKey;
 
 	public static void startSyncWorker(Context context) {
@@ -139,34 +155,200 @@ public class SyncWorker extends Worker {
 
 		BackendBucketRepository backendBucketRepository =
 				new BackendBucketRepository(context, appConfig.getBucketBaseUrl(), bucketSignaturePublicKey);
-
-		for (long batchReleaseTime = nextBatchReleaseTime;
-			 batchReleaseTime < System.currentTimeMillis();
-			 batchReleaseTime += BATCH_LENGTH) {
-			HashSet<String> infectedHashes = new HashSet<>();
-			System.out.println("Getting exposed hashes from server");
-
-			infectedHashes.addAll(backendBucketRepository.getExposeeHashes(batchReleaseTime));
-			System.out.println("Received:"+ infectedHashes);
-			int numberOfMatches = 0;
-			ArrayList<String> receivedHashes = database.getReceivedBtLocHashes();
-			for(String hash: receivedHashes){
-				if(infectedHashes.contains(hash)){
-					numberOfMatches ++;
-				}
+		backendBucketRepository.setExposedHashFormat(appConfigManager.getExposedHashFormat());
+
+		ExposedHashStore exposedHashStore = ExposedHashStore.getInstance(context);
+		long now = System.currentTimeMillis();
+		// buckets only contain hashes of contacts recorded before their release and within the retention period, each
+		// bucket is matched against the hashes of its own window of the session
+		try (HashMatchingSession session =
+					 HashMatchingSession.open(database, nextBatchReleaseTime - MAX_CONTACT_AGE, now)) {
+			HashMatchingMode hashMatchingMode = appConfigManager.getHashMatchingMode();
+			if (hashMatchingMode != HashMatchingMode.STRING_HASH_SET && now - nextBatchReleaseTime > BATCH_LENGTH &&
+					now - appConfigManager.getRangeRequestRejectedTime() > RANGE_REQUEST_RETRY_INTERVAL) {
+				nextBatchReleaseTime = catchUpRange(context, database, backendBucketRepository, session, exposedHashStore,
+						nextBatchReleaseTime, now);
 			}
-			if(numberOfMatches>0){
-				// TODO exposure calculation
-				System.out.println("YOU MAY BE EXPOSED");
-				BroadcastHelper.sendUpdateBroadcast(context);
+			switch (hashMatchingMode) {
+				case STRING_HASH_SET:
+					catchUp(context, database, nextBatchReleaseTime, now, backendBucketRepository::getExposeeHashes,
+							(batchReleaseTime, infectedHashes) -> matchStringHashes(database, batchReleaseTime, infectedHashes));
+					break;
+				case STREAMING_LOCAL_INDEX:
+					catchUp(context, database, nextBatchReleaseTime, now, backendBucketRepository::getExposeeHashStream,
+							retaining(exposedHashStore,
+									(batchReleaseTime, infectedHashes) -> matchStreamedHashes(session, batchReleaseTime,
+											infectedHashes)));
+					break;
+				case SORTED_MERGE:
+					catchUp(context, database, nextBatchReleaseTime, now, backendBucketRepository::getSortedExposeeHashStream,
+							retaining(exposedHashStore,
+									(batchReleaseTime, infectedHashes) -> matchSortedHashes(session, batchReleaseTime,
+											infectedHashes)));
+					break;
+				default:
+					catchUp(context, database, nextBatchReleaseTime, now, backendBucketRepository::getExposeeHashSet,
+							(batchReleaseTime, infectedHashes) -> {
+								retain(exposedHashStore, batchReleaseTime, infectedHashes.toList());
+								return matchPrimitiveHashes(session, batchReleaseTime, infectedHashes);
+							});
+					break;
 			}
-			appConfigManager.setLastLoadedBatchReleaseTime(batchReleaseTime);
 		}
 
 		database.removeOldData();
+		exposedHashStore.removeSegmentsBefore(now - MAX_CONTACT_AGE);
 
 		appConfigManager.setLastSyncDate(System.currentTimeMillis());
 	}
+
+	/**
+	 * Loads the buckets released in {@code [from, until)} with a single range request and matches them against the
+	 * local index as they are streamed. Each bucket is committed as soon as it has been matched.
+	 *
+	 * @return the batch release time of the first bucket that still has to be loaded, {@code from} if the backend does
+	 * not support range requests
+	 */
+	private static long catchUpRange(Context context, Database database, BackendBucketRepository backendBucketRepository,
+			HashMatchingSession session, ExposedHashStore exposedHashStore, long from, long until)
+			throws IOException, StatusCodeException, ServerTimeOffsetException {
+		AppConfigManager appConfigManager = AppConfigManager.getInstance(context);
+		BucketMatcher<LocHashStream> matcher = retaining(exposedHashStore,
+				(batchReleaseTime, infectedHashes) -> matchStreamedHashes(session, batchReleaseTime, infectedHashes));
+		long expectedBatchReleaseTime = from;
+		try (BucketFrameStream buckets = backendBucketRepository.getExposeeHashFrames(from, until)) {
+			if (buckets == null) {
+				// remembered across syncs, so a backend without range requests is not asked on every sync
+				appConfigManager.setRangeRequestRejectedTime(System.currentTimeMillis());
+				return from;
+			}
+			while (expectedBatchReleaseTime < until && buckets.nextBucket()) {
+				long batchReleaseTime = buckets.getBatchReleaseTime();
+				if (batchReleaseTime != expectedBatchReleaseTime) {
+					throw new IOException("Expected bucket " + expectedBatchReleaseTime + " but got " + batchReleaseTime);
+				}
+				recordExposures(database, batchReleaseTime, matcher.match(batchReleaseTime, buckets.getHashes()));
+				appConfigManager.setLastLoadedBatchReleaseTime(batchReleaseTime);
+				expectedBatchReleaseTime += BATCH_LENGTH;
+			}
+		}
+		return expectedBatchReleaseTime;
+	}
+
+	private interface BucketMatcher<T> {
+
+		/**
+		 * @return the received hashes contained in the bucket
+		 */
+		LocHashList match(long batchReleaseTime, T infectedHashes) throws IOException;
+
+	}
+
+	/**
+	 * Downloads the buckets released in {@code [from, until)} with up to {@link #BUCKET_DOWNLOAD_WINDOW} requests in
+	 * flight and matches them in order. The last loaded batch release time is only advanced once a bucket has been
+	 * matched, so an aborted sync resumes at the first unmatched bucket.
+	 */
+	private static <T> void catchUp(Context context, Database database, long from, long until,
+			BucketPipeline.Loader<T> loader, BucketMatcher<T> matcher)
+			throws IOException, StatusCodeException, ServerTimeOffsetException {
+		AppConfigManager appConfigManager = AppConfigManager.getInstance(context);
+		new BucketPipeline<>(BUCKET_DOWNLOAD_WINDOW, loader).run(from, until, BATCH_LENGTH, (batchReleaseTime, bucket) -> {
+			recordExposures(database, batchReleaseTime, matcher.match(batchReleaseTime, bucket));
+			appConfigManager.setLastLoadedBatchReleaseTime(batchReleaseTime);
+		});
+	}
+
+	/**
+	 * Hands the matched hashes to the database, which records a day as exposure day once enough distinct hashes of it
+	 * were matched. The database notifies the app if a new exposure day was added.
+	 */
+	private static void recordExposures(Database database, long batchReleaseTime, LocHashList matchedHashes) {
+		if (matchedHashes.isEmpty()) {
+			return;
+		}
+		Logger.i(TAG, matchedHashes.size() + " received hashes found in bucket " + batchReleaseTime);
+		database.addHashExposures(matchedHashes);
+	}
+
+	/**
+	 * Wraps a stream matcher so the bucket is written to a segment of the {@link ExposedHashStore} while it is
+	 * matched. The segment is only kept if the matcher read the whole bucket. The returned matcher closes the stream.
+	 */
+	private static BucketMatcher<LocHashStream> retaining(ExposedHashStore exposedHashStore,
+			BucketMatcher<LocHashStream> matcher) {
+		return (batchReleaseTime, infectedHashes) -> {
+			ExposedHashStore.SegmentWriter segment;
+			try {
+				segment = exposedHashStore.openSegment(batchReleaseTime);
+			} catch (IOException e) {
+				// matching this bucket can still succeed, only later re-matching against it is affected
+				Logger.e(TAG, e);
+				try (LocHashStream stream = infectedHashes) {
+					return matcher.match(batchReleaseTime, stream);
+				}
+			}
+			try (RecordingLocHashStream stream = new RecordingLocHashStream(infectedHashes, segment)) {
+				LocHashList matchedHashes = matcher.match(batchReleaseTime, stream);
+				if (!stream.isComplete()) {
+					Logger.d(TAG, "bucket " + batchReleaseTime + " was not read completely, it is not kept");
+				} else {
+					try {
+						segment.commit();
+					} catch (IOException e) {
+						Logger.e(TAG, e);
+					}
+				}
+				return matchedHashes;
+			}
+		};
+	}
+
+	private static void retain(ExposedHashStore exposedHashStore, long batchReleaseTime, LocHashList infectedHashes) {
+		try {
+			exposedHashStore.putSegment(batchReleaseTime, infectedHashes);
+		} catch (IOException e) {
+			// matching this bucket succeeded, only later re-matching against it is affected
+			Logger.e(TAG, e);
+		}
+	}
+
+	private static LocHashList matchStringHashes(Database database, long batchReleaseTime,
+			HashSet<String> infectedHashes) {
+		Logger.d(TAG, "received " + infectedHashes.size() + " exposed hashes for " + batchReleaseTime);
+		LocHashList matchedHashes = new LocHashList();
+		byte[] receivedHashes = database.getReceivedBtLocHashes(batchReleaseTime - MAX_CONTACT_AGE, batchReleaseTime);
+		for (int offset = 0; offset < receivedHashes.length; offset += LocHash.HASH_LENGTH) {
+			if (infectedHashes.contains(LocHash.toHex(LocHash.readHigh(receivedHashes, offset), LocHash.readLow(receivedHashes, offset)))) {
+				matchedHashes.add(receivedHashes, offset);
+			}
+		}
+		return matchedHashes;
+	}
+
+	private static LocHashList matchPrimitiveHashes(HashMatchingSession session, long batchReleaseTime,
+			LocHashSet infectedHashes) {
+		Logger.d(TAG, "received " + infectedHashes.size() + " exposed hashes for " + batchReleaseTime);
+		return session.match(infectedHashes, batchReleaseTime - MAX_CONTACT_AGE, batchReleaseTime);
+	}
+
+	private static LocHashList matchStreamedHashes(HashMatchingSession session, long batchReleaseTime,
+			LocHashStream infectedHashes) throws IOException {
+		LocHashList matchedHashes = session.match(infectedHashes, batchReleaseTime - MAX_CONTACT_AGE, batchReleaseTime);
+		Logger.d(TAG, "streamed exposed hashes for " + batchReleaseTime + " against " + session.size() +
+				" received hashes, " + matchedHashes.size() + " matched");
+		return matchedHashes;
+	}
+
+	private static LocHashList matchSortedHashes(HashMatchingSession session, long batchReleaseTime,
+			LocHashStream infectedHashes) throws IOException {
+		if (infectedHashes.isSorted()) {
+			return session.matchSorted(infectedHashes, batchReleaseTime - MAX_CONTACT_AGE, batchReleaseTime);
+		}
+		Logger.d(TAG, "sorted hashes not available for " + batchReleaseTime + ", probing local index");
+		return session.match(infectedHashes, batchReleaseTime - MAX_CONTACT_AGE, batchReleaseTime);
+	}
+
 	public static void testMatching(Context context) {
 		try {
 			System.out.println("In Testing");
@@ -41,6 +41,7 @@ import org.dpppt.android.sdk.R;
 import org.dpppt.android.sdk.TracingStatus;
 import org.dpppt.android.sdk.internal.crypto.CryptoModule;
 import org.dpppt.android.sdk.internal.crypto.EphId;
+import org.dpppt.android.sdk.internal.crypto.EphIdScheduler;
 import org.dpppt.android.sdk.internal.database.Database;
 import org.dpppt.android.sdk.internal.database.models.BtLocToken;
 import org.dpppt.android.sdk.internal.database.models.DeviceLocation;
@@ -74,7 +75,8 @@ public class TracingService extends Service {
 	private static final String NOTIFICATION_CHANNEL_ID = "dp3t_tracing_service";
 	private static final int NOTIFICATION_ID = 1827;
 
-	private Handler handler;
+	// read by the epoch listener on the scheduler thread
+	private volatile Handler handler;
 	private PowerManager.WakeLock wl;
 
 
@@ -128,8 +130,23 @@ public class TracingService extends Service {
 	private long scanDuration;
 
 	private boolean isFinishing;
+	private long advertisedEpochStart = -1;
 	private long locationInterval = 10000;//300000; // 5 minutes
 
+	/**
+	 * Switches the advertised EphID as soon as a new epoch starts, without waiting for the restart alarm.
+	 */
+	private final EphIdScheduler.EpochListener epochListener = (epochStart, ephId) -> {
+		Handler handler = this.handler;
+		if (handler != null) {
+			handler.post(() -> {
+				if (!isFinishing && bleServer != null && advertisedEpochStart != epochStart) {
+					startServer();
+				}
+			});
+		}
+	};
+
 	public TracingService() { }
 
 	@Override
@@ -148,6 +165,10 @@ public class TracingService extends Service {
 		registerReceiver(errorsUpdateReceiver, errorsUpdateFilter);
 
 		database = new Database(getApplicationContext());
+
+		EphIdScheduler ephIdScheduler = EphIdScheduler.getInstance(this);
+		ephIdScheduler.addEpochListener(epochListener);
+		ephIdScheduler.start();
 	}
 
 	@Override
@@ -387,8 +408,7 @@ public class TracingService extends Service {
 			// Save device location
 			DeviceLocation deviceLocation = new DeviceLocation(location.getTime(),location.getLatitude(),location.getLongitude());
 			System.out.println("Location Update = "+deviceLocation);
-			CryptoModule cryptoModule = CryptoModule.getInstance(getApplicationContext());
-			EphId ephId = cryptoModule.getCurrentEphId();
+			EphId ephId = EphIdScheduler.getInstance(this).getCurrentEphId();
 			database.saveDeviceLocation(deviceLocation);
 			BtLocToken btLocToken = new BtLocToken(ephId, deviceLocation);
 			System.out.println("Saving bt+loc tokens");
@@ -424,7 +444,11 @@ public class TracingService extends Service {
 	}
 
 	private void restartServer() {
-		BluetoothState bluetoothState = startServer();
+		boolean advertisingCurrentEpoch = bleServer != null &&
+				advertisedEpochStart == CryptoModule.getEpochStart(System.currentTimeMillis()) &&
+				AppConfigManager.getInstance(this).getCalibrationTestDeviceName() == null;
+		// the EphIdScheduler usually switched the EphID at the epoch boundary already
+		BluetoothState bluetoothState = advertisingCurrentEpoch ? BluetoothState.ENABLED : startServer();
 		if (bluetoothState == BluetoothState.NOT_SUPPORTED) {
 			Logger.e(TAG, "bluetooth not supported");
 			return;
@@ -476,6 +500,7 @@ public class TracingService extends Service {
 			bleServer = new BleServer(this);
 
 			Logger.d(TAG, "startAdvertising");
+			advertisedEpochStart = CryptoModule.getEpochStart(System.currentTimeMillis());
 			BluetoothState advertiserState = bleServer.startAdvertising();
 			return advertiserState;
 		}
@@ -487,6 +512,7 @@ public class TracingService extends Service {
 			bleServer.stop();
 			bleServer = null;
 		}
+		advertisedEpochStart = -1;
 	}
 
 	private BluetoothState startClient() {
@@ -526,6 +552,10 @@ public class TracingService extends Service {
 		unregisterReceiver(bluetoothStateChangeReceiver);
 		unregisterReceiver(locationServiceStateChangeReceiver);
 
+		EphIdScheduler ephIdScheduler = EphIdScheduler.getInstance(this);
+		ephIdScheduler.removeEpochListener(epochListener);
+		ephIdScheduler.stop();
+
 		if (handler != null) {
 			handler.removeCallbacksAndMessages(null);
 		}
@@ -11,6 +11,7 @@ package org.dpppt.android.sdk.internal.backend;
 
 import android.content.Context;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import java.io.IOException;
 import java.security.PublicKey;
@@ -24,7 +25,12 @@ import org.dpppt.android.sdk.backend.SignatureException;
 import org.dpppt.android.sdk.backend.SignatureVerificationInterceptor;
 import org.dpppt.android.sdk.internal.backend.models.ExposedOverview;
 import org.dpppt.android.sdk.internal.backend.proto.Exposed;
+import org.dpppt.android.sdk.internal.matching.LocHashSet;
+import org.dpppt.android.sdk.internal.matching.LocHashStream;
+import org.dpppt.android.sdk.util.SignatureUtil;
 
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
 import retrofit2.Response;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
@@ -34,7 +40,14 @@ public class BackendBucketRepository implements Repository {
 
 	public static long BATCH_LENGTH = 2 * 60 * 60 * 1000L; // 2 hours
 
+	private static final int HTTP_NOT_FOUND = 404;
+	private static final int HTTP_NOT_ACCEPTABLE = 406;
+	private static final int HTTP_UNSUPPORTED_MEDIA_TYPE = 415;
+	private static final int HTTP_NOT_IMPLEMENTED = 501;
+
 	private BucketService bucketService;
+	private volatile ExposedHashFormat exposedHashFormat = ExposedHashFormat.PROTOBUF;
+	private volatile boolean sortedHashesSupported = true;
 
 	public BackendBucketRepository(@NonNull Context context, @NonNull String bucketBaseUrl, @NonNull PublicKey publicKey) {
 		Retrofit bucketRetrofit = new Retrofit.Builder()
@@ -44,6 +57,7 @@ public class BackendBucketRepository implements Repository {
 						.addInterceptor(new SignatureVerificationInterceptor(publicKey))
 						.cache(null)
 						.build())
+				.addConverterFactory(LocHashStreamConverterFactory.create())
 				.addConverterFactory(ProtoConverterFactory.create())
 				.addConverterFactory(GsonConverterFactory.create())
 				.build();
@@ -90,6 +104,103 @@ public class BackendBucketRepository implements Repository {
 		}
 	}
 
+	public void setExposedHashFormat(@NonNull ExposedHashFormat exposedHashFormat) {
+		this.exposedHashFormat = exposedHashFormat;
+	}
+
+	public LocHashSet getExposeeHashSet(long batchReleaseTime)
+			throws IOException, StatusCodeException, ServerTimeOffsetException, SignatureException {
+		if (exposedHashFormat == ExposedHashFormat.PROTOBUF) {
+			LocHashSet hashes = new LocHashSet();
+			try (LocHashStream stream = getExposeeHashStream(batchReleaseTime)) {
+				while (stream.next()) {
+					hashes.add(stream.high(), stream.low());
+				}
+			}
+			return hashes;
+		}
+		Response<LocHashSet> response = bucketService.getExposeeHashSet(batchReleaseTime).execute();
+		if (response.isSuccessful() && response.body() != null) {
+			return response.body();
+		} else {
+			throw new StatusCodeException(response.raw());
+		}
+	}
+
+	/**
+	 * Opens the bucket for streaming. The hashes are decoded while the body is being read, so the caller has to
+	 * close the returned stream.
+	 */
+	public LocHashStream getExposeeHashStream(long batchReleaseTime)
+			throws IOException, StatusCodeException, ServerTimeOffsetException, SignatureException {
+		if (exposedHashFormat == ExposedHashFormat.PROTOBUF) {
+			Response<LocHashStream> response = bucketService.getExposeeHashStreamProtobuf(batchReleaseTime).execute();
+			if (response.isSuccessful() && response.body() != null) {
+				return response.body();
+			} else if (response.code() != HTTP_NOT_ACCEPTABLE && response.code() != HTTP_UNSUPPORTED_MEDIA_TYPE) {
+				throw new StatusCodeException(response.raw());
+			}
+			// backend does not serve protobuf hashes, use JSON for the rest of this sync
+			exposedHashFormat = ExposedHashFormat.JSON;
+		}
+		Response<LocHashStream> response = bucketService.getExposeeHashStream(batchReleaseTime).execute();
+		if (response.isSuccessful() && response.body() != null) {
+			return response.body();
+		} else {
+			throw new StatusCodeException(response.raw());
+		}
+	}
+
+	/**
+	 * Opens the bucket as a golomb-rice coded stream of sorted hashes. If the backend does not offer this encoding,
+	 * the stream of {@link #getExposeeHashStream(long)} is returned instead; check {@link LocHashStream#isSorted()}.
+	 */
+	public LocHashStream getSortedExposeeHashStream(long batchReleaseTime)
+			throws IOException, StatusCodeException, ServerTimeOffsetException, SignatureException {
+		if (sortedHashesSupported) {
+			Response<LocHashStream> response = bucketService.getSortedExposeeHashStream(batchReleaseTime).execute();
+			if (response.isSuccessful() && response.body() != null) {
+				return response.body();
+			} else if (response.code() != HTTP_NOT_ACCEPTABLE && response.code() != HTTP_UNSUPPORTED_MEDIA_TYPE) {
+				throw new StatusCodeException(response.raw());
+			}
+			sortedHashesSupported = false;
+		}
+		return getExposeeHashStream(batchReleaseTime);
+	}
+
+	/**
+	 * Requests all buckets released in {@code [from, until)} with a single request. Every bucket is signed on its own
+	 * and is verified as the stream is read.
+	 *
+	 * @return the buckets in order of their batch release time, or {@code null} if the backend does not support range
+	 * requests; the caller has to close the returned stream
+	 */
+	@Nullable
+	public BucketFrameStream getExposeeHashFrames(long fromBatchReleaseTime, long untilBatchReleaseTime)
+			throws IOException, StatusCodeException, ServerTimeOffsetException, SignatureException {
+		Response<ResponseBody> response =
+				bucketService.getExposeeHashFrames(fromBatchReleaseTime, untilBatchReleaseTime).execute();
+		ResponseBody body = response.body();
+		if (response.isSuccessful() && body != null && isSignedBucketFrames(body.contentType())) {
+			return new BucketFrameStream(body);
+		}
+		if (body != null) {
+			body.close();
+		}
+		int code = response.code();
+		if (response.isSuccessful() || code == HTTP_NOT_FOUND || code == HTTP_NOT_ACCEPTABLE ||
+				code == HTTP_UNSUPPORTED_MEDIA_TYPE || code == HTTP_NOT_IMPLEMENTED) {
+			return null;
+		}
+		throw new StatusCodeException(response.raw());
+	}
+
+	private static boolean isSignedBucketFrames(MediaType contentType) {
+		return contentType != null &&
+				SignatureUtil.MEDIA_TYPE_SIGNED_BUCKET_FRAMES.equals(contentType.type() + "/" + contentType.subtype());
+	}
+
 	public HashSet<String> getTestExposeeHashes(int count) throws IOException, StatusCodeException, ServerTimeOffsetException, SignatureException {
 		Response<HashSet<String>> response;
 		try {
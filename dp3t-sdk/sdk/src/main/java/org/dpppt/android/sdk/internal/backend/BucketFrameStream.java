@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.backend;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.dpppt.android.sdk.internal.matching.LocHashStream;
+
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+
+/**
+ * Reads the buckets of a range request one after another. The frames have already been verified by the
+ * {@code SignatureVerificationInterceptor}; the payload of each frame is a {@code ProtoExposedHashList}.
+ */
+public class BucketFrameStream implements Closeable {
+
+	private final ResponseBody body;
+	private final BufferedSource source;
+
+	private long batchReleaseTime;
+	private Buffer payload;
+
+	BucketFrameStream(ResponseBody body) {
+		this.body = body;
+		this.source = body.source();
+	}
+
+	/**
+	 * Advances to the next bucket. The hashes of the previous bucket are no longer available afterwards.
+	 */
+	public boolean nextBucket() throws IOException {
+		if (payload != null) {
+			payload.clear();
+		}
+		if (source.exhausted()) {
+			payload = null;
+			return false;
+		}
+		batchReleaseTime = source.readLong();
+		source.skip(source.readInt());
+		long payloadLength = source.readInt();
+		payload = new Buffer();
+		source.readFully(payload, payloadLength);
+		return true;
+	}
+
+	public long getBatchReleaseTime() {
+		return batchReleaseTime;
+	}
+
+	public LocHashStream getHashes() {
+		if (payload == null) {
+			throw new IllegalStateException("no current bucket");
+		}
+		return new ProtoLocHashStream(payload, payload);
+	}
+
+	@Override
+	public void close() {
+		body.close();
+	}
+
+}
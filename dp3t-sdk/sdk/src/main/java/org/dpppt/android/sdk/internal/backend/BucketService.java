@@ -12,14 +12,21 @@ package org.dpppt.android.sdk.internal.backend;
 import org.dpppt.android.sdk.internal.backend.models.ExposedOverview;
 import org.dpppt.android.sdk.internal.backend.proto.Exposed;
 import org.dpppt.android.sdk.internal.gatt.GattConnectionTask;
+import org.dpppt.android.sdk.internal.matching.GolombRiceLocHashStream;
+import org.dpppt.android.sdk.internal.matching.LocHashSet;
+import org.dpppt.android.sdk.internal.matching.LocHashStream;
+import org.dpppt.android.sdk.util.SignatureUtil;
 
 import java.util.ArrayList;
 import java.util.HashSet;
 
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.GET;
 import retrofit2.http.Headers;
 import retrofit2.http.Path;
+import retrofit2.http.Query;
+import retrofit2.http.Streaming;
 
 interface BucketService {
 
@@ -31,6 +38,28 @@ interface BucketService {
 	@GET("v1/exposedHashes/{batchReleaseTime}")
 	Call<HashSet<String>> getExposeeHashes(@Path("batchReleaseTime") long batchReleaseTime);
 
+	@Headers("Accept: application/json")
+	@GET("v1/exposedHashes/{batchReleaseTime}")
+	Call<LocHashSet> getExposeeHashSet(@Path("batchReleaseTime") long batchReleaseTime);
+
+	@Headers("Accept: application/json")
+	@GET("v1/exposedHashes/{batchReleaseTime}")
+	Call<LocHashStream> getExposeeHashStream(@Path("batchReleaseTime") long batchReleaseTime);
+
+	@Headers("Accept: application/x-protobuf")
+	@GET("v1/exposedHashes/{batchReleaseTime}")
+	Call<LocHashStream> getExposeeHashStreamProtobuf(@Path("batchReleaseTime") long batchReleaseTime);
+
+	@Headers("Accept: " + GolombRiceLocHashStream.MEDIA_TYPE)
+	@GET("v1/exposedHashes/{batchReleaseTime}")
+	Call<LocHashStream> getSortedExposeeHashStream(@Path("batchReleaseTime") long batchReleaseTime);
+
+	@Streaming
+	@Headers("Accept: " + SignatureUtil.MEDIA_TYPE_SIGNED_BUCKET_FRAMES)
+	@GET("v1/exposedHashes")
+	Call<ResponseBody> getExposeeHashFrames(@Query("from") long fromBatchReleaseTime,
+			@Query("until") long untilBatchReleaseTime);
+
 	@Headers("Accept: application/json")
 	@GET("v1/testExposedHashes/{count}")
 	Call<HashSet<String>> getTestExposeeHashes(@Path("count") int count);
@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.backend;
+
+public enum ExposedHashFormat {
+	/**
+	 * JSON array of hex encoded hashes.
+	 */
+	JSON,
+	/**
+	 * {@code ProtoExposedHashList} carrying the hashes as packed 10 byte values. Falls back to JSON if the backend
+	 * does not accept the format.
+	 */
+	PROTOBUF
+}
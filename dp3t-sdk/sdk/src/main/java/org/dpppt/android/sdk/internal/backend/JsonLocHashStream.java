@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.backend;
+
+import java.io.IOException;
+
+import org.dpppt.android.sdk.internal.matching.LocHash;
+import org.dpppt.android.sdk.internal.matching.LocHashStream;
+
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+/**
+ * Tokenizes a JSON array of hex encoded hashes byte by byte, without creating a {@code String} per hash.
+ */
+class JsonLocHashStream implements LocHashStream {
+
+	private final ResponseBody body;
+	private final BufferedSource source;
+	private final byte[] hexBuffer = new byte[LocHash.HEX_LENGTH];
+
+	private boolean started = false;
+	private boolean finished = false;
+	private long high;
+	private int low;
+
+	JsonLocHashStream(ResponseBody body) {
+		this.body = body;
+		this.source = body.source();
+	}
+
+	@Override
+	public boolean next() throws IOException {
+		if (finished) {
+			return false;
+		}
+		int c = nextNonWhitespace();
+		if (!started) {
+			if (c != '[') {
+				throw new IOException("Expected '[' but was '" + (char) c + "'");
+			}
+			started = true;
+			c = nextNonWhitespace();
+			if (c == ']') {
+				finished = true;
+				return false;
+			}
+		} else if (c == ']') {
+			finished = true;
+			return false;
+		} else if (c == ',') {
+			c = nextNonWhitespace();
+		} else {
+			throw new IOException("Expected ',' or ']' but was '" + (char) c + "'");
+		}
+		if (c != '"') {
+			throw new IOException("Expected '\"' but was '" + (char) c + "'");
+		}
+		source.readFully(hexBuffer);
+		if (source.readByte() != '"') {
+			throw new IOException("Unexpected hash length, expected " + LocHash.HEX_LENGTH + " hex digits");
+		}
+		try {
+			high = LocHash.parseHigh(hexBuffer, 0);
+			low = LocHash.parseLow(hexBuffer, 0);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+		return true;
+	}
+
+	@Override
+	public long high() {
+		return high;
+	}
+
+	@Override
+	public int low() {
+		return low;
+	}
+
+	@Override
+	public void close() {
+		body.close();
+	}
+
+	private int nextNonWhitespace() throws IOException {
+		int c;
+		do {
+			c = source.readByte();
+		} while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+		return c;
+	}
+
+}
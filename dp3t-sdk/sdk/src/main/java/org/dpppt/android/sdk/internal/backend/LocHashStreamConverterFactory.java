@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.backend;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import org.dpppt.android.sdk.internal.matching.GolombRiceLocHashStream;
+import org.dpppt.android.sdk.internal.matching.LocHashStream;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+/**
+ * Hands out the response body as a lazily decoded {@link LocHashStream} instead of converting it up front. The
+ * decoder is picked from the content type of the response, so a backend answering with JSON to a protobuf request
+ * is still understood. The caller owns the returned stream and has to close it.
+ */
+class LocHashStreamConverterFactory extends Converter.Factory {
+
+	static LocHashStreamConverterFactory create() {
+		return new LocHashStreamConverterFactory();
+	}
+
+	@Override
+	public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+		if (type != LocHashStream.class) {
+			return null;
+		}
+		return body -> {
+			MediaType contentType = body.contentType();
+			if (isGolombRice(contentType)) {
+				return new GolombRiceLocHashStream(body.byteStream());
+			} else if (isProtobuf(contentType)) {
+				return new ProtoLocHashStream(body);
+			} else {
+				return new JsonLocHashStream(body);
+			}
+		};
+	}
+
+	private static boolean isGolombRice(MediaType contentType) {
+		return contentType != null &&
+				GolombRiceLocHashStream.MEDIA_TYPE.equals(contentType.type() + "/" + contentType.subtype());
+	}
+
+	private static boolean isProtobuf(MediaType contentType) {
+		return contentType != null && contentType.subtype().contains("protobuf");
+	}
+
+}
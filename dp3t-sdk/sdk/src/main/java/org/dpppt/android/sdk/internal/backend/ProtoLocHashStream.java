@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.backend;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.dpppt.android.sdk.internal.matching.LocHash;
+import org.dpppt.android.sdk.internal.matching.LocHashStream;
+
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+/**
+ * Decodes a {@code ProtoExposedHashList} directly from the wire. Only the protobuf framing is parsed here, the
+ * packed hashes are read from the body as they arrive instead of being materialized as {@code ByteString}s.
+ */
+class ProtoLocHashStream implements LocHashStream {
+
+	private static final int FIELD_HASHES = 2;
+
+	private static final int WIRETYPE_VARINT = 0;
+	private static final int WIRETYPE_FIXED64 = 1;
+	private static final int WIRETYPE_LENGTH_DELIMITED = 2;
+	private static final int WIRETYPE_FIXED32 = 5;
+
+	private final BufferedSource source;
+	private final Closeable owner;
+	private final byte[] hashBuffer = new byte[LocHash.HASH_LENGTH];
+
+	private long remainingHashBytes = 0;
+	private long high;
+	private int low;
+
+	ProtoLocHashStream(ResponseBody body) {
+		this(body.source(), body);
+	}
+
+	ProtoLocHashStream(BufferedSource source, Closeable owner) {
+		this.source = source;
+		this.owner = owner;
+	}
+
+	@Override
+	public boolean next() throws IOException {
+		while (remainingHashBytes == 0) {
+			if (source.exhausted()) {
+				return false;
+			}
+			long tag = readVarint();
+			int fieldNumber = (int) (tag >>> 3);
+			int wireType = (int) (tag & 0x7);
+			if (fieldNumber == FIELD_HASHES && wireType == WIRETYPE_LENGTH_DELIMITED) {
+				remainingHashBytes = readVarint();
+				if (remainingHashBytes % LocHash.HASH_LENGTH != 0) {
+					throw new IOException("Hash chunk of " + remainingHashBytes + " bytes is not a multiple of " +
+							LocHash.HASH_LENGTH);
+				}
+			} else {
+				skipField(wireType);
+			}
+		}
+		source.readFully(hashBuffer);
+		remainingHashBytes -= LocHash.HASH_LENGTH;
+		high = LocHash.readHigh(hashBuffer, 0);
+		low = LocHash.readLow(hashBuffer, 0);
+		return true;
+	}
+
+	@Override
+	public long high() {
+		return high;
+	}
+
+	@Override
+	public int low() {
+		return low;
+	}
+
+	@Override
+	public void close() throws IOException {
+		owner.close();
+	}
+
+	private long readVarint() throws IOException {
+		long result = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = source.readByte();
+			result |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return result;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	private void skipField(int wireType) throws IOException {
+		switch (wireType) {
+			case WIRETYPE_VARINT:
+				readVarint();
+				break;
+			case WIRETYPE_FIXED64:
+				source.skip(8);
+				break;
+			case WIRETYPE_LENGTH_DELIMITED:
+				source.skip(readVarint());
+				break;
+			case WIRETYPE_FIXED32:
+				source.skip(4);
+				break;
+			default:
+				throw new IOException("Unsupported wire type " + wireType);
+		}
+	}
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.crypto;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.dpppt.android.sdk.internal.database.models.Contact;
+import org.dpppt.android.sdk.internal.util.DayDate;
+
+/**
+ * Read-only index of the contacts of a time range, grouped by day and, within a day, by EphID. It is loaded with one
+ * query per day and then shared by all known cases of a matching session, so the number of queries no longer grows
+ * with the number of cases.
+ */
+public class ContactIndex {
+
+	private final Map<DayDate, EphIdMap<List<Contact>>> contactsByDay = new HashMap<>();
+	private final long timeFrom;
+	private final long timeUntil;
+	private int size;
+
+	/**
+	 * @param timeFrom timestamp inclusive, rounded down to the start of its day
+	 * @param timeUntil timestamp exclusive
+	 */
+	public static ContactIndex load(long timeFrom, long timeUntil, @NonNull CryptoModule.GetContactsCallback contactCallback) {
+		DayDate day = new DayDate(timeFrom);
+		ContactIndex index = new ContactIndex(day.getStartOfDayTimestamp(), timeUntil);
+		while (day.getStartOfDayTimestamp() < timeUntil) {
+			DayDate nextDay = day.getNextDay();
+			List<Contact> contacts =
+					contactCallback.getContacts(day.getStartOfDayTimestamp(), Math.min(nextDay.getStartOfDayTimestamp(), timeUntil));
+			if (!contacts.isEmpty()) {
+				index.addDay(day, contacts);
+			}
+			day = nextDay;
+		}
+		return index;
+	}
+
+	private ContactIndex(long timeFrom, long timeUntil) {
+		this.timeFrom = timeFrom;
+		this.timeUntil = timeUntil;
+	}
+
+	private void addDay(DayDate day, List<Contact> contacts) {
+		EphIdMap<List<Contact>> contactsByEphId = new EphIdMap<>(contacts.size());
+		for (Contact contact : contacts) {
+			List<Contact> contactsOfEphId = contactsByEphId.get(contact.getEphId());
+			if (contactsOfEphId == null) {
+				contactsOfEphId = new ArrayList<>(1);
+				contactsByEphId.put(contact.getEphId(), contactsOfEphId);
+			}
+			contactsOfEphId.add(contact);
+		}
+		contactsByDay.put(day, contactsByEphId);
+		size += contacts.size();
+	}
+
+	/**
+	 * @return the contacts of {@code day}, or null if there were none
+	 */
+	public EphIdMap<List<Contact>> getContacts(DayDate day) {
+		return contactsByDay.get(day);
+	}
+
+	public long getTimeFrom() {
+		return timeFrom;
+	}
+
+	public long getTimeUntil() {
+		return timeUntil;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+}
@@ -12,7 +12,6 @@ package org.dpppt.android.sdk.internal.crypto;
 import android.content.Context;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 
 import org.dpppt.android.sdk.internal.AppConfigManager;
@@ -25,16 +24,18 @@ public class ContactsFactory {
 	private static final long WINDOW_DURATION = 5 * 60 * 1000l;
 
 	public static List<Contact>    mergeHandshakesToContacts(Context context, List<Handshake> handshakes) {
-		HashMap<EphId, List<Handshake>> handshakeMapping = new HashMap<>();
+		EphIdMap<List<Handshake>> handshakeMapping = new EphIdMap<>();
 
 		AppConfigManager appConfigManager = AppConfigManager.getInstance(context);
 
 		// group handhakes by id
 		for (Handshake handshake : handshakes) {
-			if (!handshakeMapping.containsKey(handshake.getEphId())) {
-				handshakeMapping.put(handshake.getEphId(), new ArrayList<>());
+			List<Handshake> handshakesOfEphId = handshakeMapping.get(handshake.getEphId());
+			if (handshakesOfEphId == null) {
+				handshakesOfEphId = new ArrayList<>();
+				handshakeMapping.put(handshake.getEphId(), handshakesOfEphId);
 			}
-			handshakeMapping.get(handshake.getEphId()).add(handshake);
+			handshakesOfEphId.add(handshake);
 		}
 
 		//filter result to only contain actual contacts in close proximity
@@ -18,21 +18,14 @@ import androidx.security.crypto.MasterKeys;
 
 import java.io.IOException;
 import java.security.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 
-import javax.crypto.BadPaddingException;
-import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.KeyGenerator;
-import javax.crypto.Mac;
-import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
-import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
 
 import org.dpppt.android.sdk.backend.models.ExposeeAuthMethod;
 import org.dpppt.android.sdk.backend.models.ExposeeAuthMethodJson;
@@ -42,24 +35,21 @@ import org.dpppt.android.sdk.internal.database.models.BtLocToken;
 import org.dpppt.android.sdk.internal.database.models.Contact;
 import org.dpppt.android.sdk.internal.database.models.DeviceLocation;
 import org.dpppt.android.sdk.internal.logger.Logger;
+import org.dpppt.android.sdk.internal.matching.LocHash;
 import org.dpppt.android.sdk.internal.util.DayDate;
 import org.dpppt.android.sdk.internal.util.Json;
 
 import static org.dpppt.android.sdk.internal.util.Base64Util.toBase64;
 
-import com.google.common.io.BaseEncoding;
-import com.google.common.primitives.Bytes;
-import com.google.common.primitives.Longs;
-
 public class CryptoModule {
 
 	public static final int EPHID_LENGTH = 16;
 
 	public static final int NUMBER_OF_DAYS_TO_KEEP_DATA = 21;
 	public static final int NUMBER_OF_DAYS_TO_KEEP_EXPOSED_DAYS = 10;
-	private static final int NUMBER_OF_EPOCHS_PER_DAY = 24 * 4;
+	static final int NUMBER_OF_EPOCHS_PER_DAY = 24 * 4;
 	public static final int MILLISECONDS_PER_EPOCH = 24 * 60 * 60 * 1000 / NUMBER_OF_EPOCHS_PER_DAY;
-	private static final byte[] BROADCAST_KEY = "broadcast key".getBytes();
+	static final long MILLISECONDS_PER_DAY = 24 * 60 * 60 * 1000L;
 
 	private static final String KEY_SK_LIST_JSON = "SK_LIST_JSON";
 	private static final String KEY_EPHIDS_TODAY_JSON = "EPHIDS_TODAY_JSON";
@@ -69,6 +59,17 @@ public class CryptoModule {
 	private static CryptoModule instance;
 
 	private SharedPreferences esp;
+	/**
+	 * Decrypted view of the stored keys, so the BLE and location paths do not decrypt and parse the encrypted
+	 * preferences on every call. Only replaced while holding the monitor of this module, after the change was
+	 * written to {@link #esp}.
+	 */
+	private volatile KeyState keyState;
+	/**
+	 * EphIDs of an upcoming day, computed ahead of time by the {@link EphIdScheduler}. The key of that day is
+	 * only stored once the day has started.
+	 */
+	private volatile EphIdsForDay preparedEphIds;
 	private static Context mContext;
 	public static CryptoModule getInstance(Context context) {
 		if (instance == null) {
@@ -88,10 +89,9 @@ public class CryptoModule {
 		return instance;
 	}
 
-	public boolean init() {
+	public synchronized boolean init() {
 		try {
-			String stringKey = esp.getString(KEY_SK_LIST_JSON, null);
-			if (stringKey != null) return true; //key already exists
+			if (getKeyState().getNewestSK() != null) return true; //key already exists
 			SKList skList = new SKList();
 			skList.add(Pair.create(new DayDate(System.currentTimeMillis()), getNewRandomKey()));
 			storeSKList(skList);
@@ -103,80 +103,103 @@ public class CryptoModule {
 	}
 
 	public byte[] getNewRandomKey() throws NoSuchAlgorithmException {
-		KeyGenerator keyGenerator = KeyGenerator.getInstance("HmacSHA256");
+		KeyGenerator keyGenerator = KeyGenerator.getInstance(CryptoPrimitives.HMAC_SHA_256);
 		SecretKey secretKey = keyGenerator.generateKey();
 		return secretKey.getEncoded();
 	}
 
 	protected SKList getSKList() {
-		String skListJson = esp.getString(KEY_SK_LIST_JSON, null);
-		return Json.safeFromJson(skListJson, SKList.class, SKList::new);
+		SKList skList = new SKList();
+		skList.addAll(getKeyState().getSKList());
+		return skList;
 	}
 
-	private void storeSKList(SKList skList) {
+	private synchronized void storeSKList(SKList skList) {
 		esp.edit().putString(KEY_SK_LIST_JSON, Json.toJson(skList)).apply();
+		keyState = getKeyState().withSKList(skList);
 	}
 
-	protected byte[] getSKt1(byte[] SKt0) {
-		try {
-			MessageDigest digest = MessageDigest.getInstance("SHA-256");
-			byte[] SKt1 = digest.digest(SKt0);
-			return SKt1;
-		} catch (NoSuchAlgorithmException e) {
-			throw new IllegalStateException("SHA-256 algorithm must be present!");
+	private KeyState getKeyState() {
+		KeyState state = keyState;
+		if (state == null) {
+			synchronized (this) {
+				state = keyState;
+				if (state == null) {
+					state = loadKeyState();
+					keyState = state;
+				}
+			}
 		}
+		return state;
 	}
 
-	private void rotateSK() {
+	private KeyState loadKeyState() {
+		SKList skList = Json.safeFromJson(esp.getString(KEY_SK_LIST_JSON, "null"), SKList.class, () -> null);
+		EphIdsForDay ephIdsForDay = Json.safeFromJson(esp.getString(KEY_EPHIDS_TODAY_JSON, "null"), EphIdsForDay.class,
+				() -> null);
+		return new KeyState(skList != null ? skList : new SKList(), ephIdsForDay);
+	}
+
+	protected byte[] getSKt1(byte[] SKt0) {
+		return CryptoPrimitives.sha256().digest(SKt0);
+	}
+
+	/**
+	 * Ratchets the newest key forward until {@code day} and stores the resulting list once, however many days were
+	 * missed. Only the newest {@link #NUMBER_OF_DAYS_TO_KEEP_DATA} keys are kept.
+	 */
+	private synchronized void rotateSKUntil(DayDate day) {
 		SKList skList = getSKList();
-		DayDate nextDay = skList.get(0).first.getNextDay();
-		byte[] SKt1 = getSKt1(skList.get(0).second);
-		skList.add(0, Pair.create(nextDay, SKt1));
-		List<Pair<DayDate, byte[]>> subList = skList.subList(0, Math.min(NUMBER_OF_DAYS_TO_KEEP_DATA, skList.size()));
-		skList = new SKList();
-		skList.addAll(subList);
-		storeSKList(skList);
+		DayDate skDay = skList.get(0).first;
+		byte[] SKt = skList.get(0).second;
+		ArrayDeque<Pair<DayDate, byte[]>> newKeys = new ArrayDeque<>();
+		while (skDay.isBefore(day)) {
+			skDay = skDay.getNextDay();
+			SKt = getSKt1(SKt);
+			newKeys.addFirst(Pair.create(skDay, SKt));
+			if (newKeys.size() > NUMBER_OF_DAYS_TO_KEEP_DATA) {
+				newKeys.removeLast();
+			}
+		}
+		if (newKeys.isEmpty()) {
+			return;
+		}
+		SKList rotated = new SKList();
+		rotated.addAll(newKeys);
+		for (int i = 0; rotated.size() < NUMBER_OF_DAYS_TO_KEEP_DATA && i < skList.size(); i++) {
+			rotated.add(skList.get(i));
+		}
+		storeSKList(rotated);
 	}
 
 	protected byte[] getCurrentSK(DayDate day) {
-		SKList SKList = getSKList();
-		while (SKList.get(0).first.isBefore(day)) {
-			rotateSK();
-			SKList = getSKList();
+		Pair<DayDate, byte[]> newestSK = getKeyState().getNewestSK();
+		if (newestSK.first.equals(day)) {
+			return newestSK.second;
 		}
-		assert SKList.get(0).first.equals(day);
-		return SKList.get(0).second;
+		synchronized (this) {
+			rotateSKUntil(day);
+			newestSK = getKeyState().getNewestSK();
+		}
+		assert newestSK.first.equals(day);
+		return newestSK.second;
 	}
 
 	protected List<EphId> createEphIds(byte[] SK, boolean shuffle) {
-		try {
-			Mac mac = Mac.getInstance("HmacSHA256");
-			mac.init(new SecretKeySpec(SK, "HmacSHA256"));
-			mac.update(BROADCAST_KEY);
-			byte[] prf = mac.doFinal();
-
-			//generate EphIDs
-			SecretKeySpec keySpec = new SecretKeySpec(prf, "AES");
-			Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
-			byte[] counter = new byte[16];
-			cipher.init(Cipher.ENCRYPT_MODE, keySpec, new IvParameterSpec(counter));
-			ArrayList<EphId> ephIds = new ArrayList<>();
-			byte[] emptyArray = new byte[EPHID_LENGTH];
-			for (int i = 0; i < NUMBER_OF_EPOCHS_PER_DAY; i++) {
-				ephIds.add(new EphId(cipher.update(emptyArray)));
-			}
-			if (shuffle) {
-				Collections.shuffle(ephIds, new SecureRandom());
-			}
-			return ephIds;
-		} catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException | InvalidAlgorithmParameterException e) {
-			throw new IllegalStateException("HmacSHA256 and AES algorithms must be present!", e);
+		EphIdBlock ephIdBlock = EphIdGenerator.get().generate(SK);
+		ArrayList<EphId> ephIds = new ArrayList<>(ephIdBlock.size());
+		for (int i = 0; i < ephIdBlock.size(); i++) {
+			ephIds.add(ephIdBlock.toEphId(i));
+		}
+		if (shuffle) {
+			Collections.shuffle(ephIds, new SecureRandom());
 		}
+		return ephIds;
 	}
 
 	private static int getEpochCounter(long time) {
-		DayDate day = new DayDate(time);
-		return (int) (time - day.getStartOfDayTimestamp()) / MILLISECONDS_PER_EPOCH;
+		// days are UTC days, which all have the same length in epoch millis
+		return (int) ((time % MILLISECONDS_PER_DAY) / MILLISECONDS_PER_EPOCH);
 	}
 
 	public long getCurrentEpochStart() {
@@ -189,56 +212,79 @@ public class CryptoModule {
 		return currentDay.getStartOfDayTimestamp() + getEpochCounter(time) * MILLISECONDS_PER_EPOCH;
 	}
 
-	private EphIdsForDay getStoredEphIdsForToday() {
-		String ephIdsJson = esp.getString(KEY_EPHIDS_TODAY_JSON, "null");
-		return Json.safeFromJson(ephIdsJson, EphIdsForDay.class, () -> null);
-	}
-
-	private void storeEphIdsForToday(EphIdsForDay ephIdsForDay) {
+	private synchronized void storeEphIdsForToday(EphIdsForDay ephIdsForDay) {
 		esp.edit().putString(KEY_EPHIDS_TODAY_JSON, Json.toJson(ephIdsForDay)).apply();
+		keyState = getKeyState().withEphIds(ephIdsForDay);
 	}
 
 	protected List<EphId> getEphIdsForToday(DayDate currentDay) {
-		EphIdsForDay ephIdsForDay = getStoredEphIdsForToday();
-		if (ephIdsForDay == null || !ephIdsForDay.dayDate.equals(currentDay)) {
-			byte[] SK = getCurrentSK(currentDay);
-			ephIdsForDay = new EphIdsForDay();
-			ephIdsForDay.dayDate = currentDay;
-			ephIdsForDay.ephIds = createEphIds(SK, true);
-			storeEphIdsForToday(ephIdsForDay);
+		List<EphId> ephIds = getKeyState().getEphIds(currentDay);
+		if (ephIds != null) {
+			return ephIds;
+		}
+		synchronized (this) {
+			ephIds = getKeyState().getEphIds(currentDay);
+			if (ephIds == null) {
+				byte[] SK = getCurrentSK(currentDay);
+				EphIdsForDay ephIdsForDay = preparedEphIds;
+				if (ephIdsForDay == null || !ephIdsForDay.dayDate.equals(currentDay)) {
+					ephIdsForDay = new EphIdsForDay();
+					ephIdsForDay.dayDate = currentDay;
+					ephIdsForDay.ephIds = createEphIds(SK, true);
+				}
+				preparedEphIds = null;
+				storeEphIdsForToday(ephIdsForDay);
+				ephIds = getKeyState().getEphIds(currentDay);
+			}
+			return ephIds;
 		}
-		return ephIdsForDay.ephIds;
+	}
+
+	/**
+	 * Computes the EphIDs of a day after the newest stored key, so they are ready when the day starts. Nothing is
+	 * persisted; the key of the day is derived again and stored when the EphIDs are first requested on that day.
+	 *
+	 * @return the EphIDs of the day, null if there is no stored key before that day
+	 */
+	synchronized List<EphId> prepareEphIdsForDay(DayDate day) {
+		EphIdsForDay prepared = preparedEphIds;
+		if (prepared != null && prepared.dayDate.equals(day)) {
+			return prepared.ephIds;
+		}
+		Pair<DayDate, byte[]> newestSK = getKeyState().getNewestSK();
+		if (newestSK == null || !newestSK.first.isBefore(day)) {
+			return null;
+		}
+		DayDate skDay = newestSK.first;
+		byte[] sk = newestSK.second;
+		while (skDay.isBefore(day)) {
+			sk = getSKt1(sk);
+			skDay = skDay.getNextDay();
+		}
+		prepared = new EphIdsForDay();
+		prepared.dayDate = day;
+		prepared.ephIds = createEphIds(sk, true);
+		preparedEphIds = prepared;
+		return prepared.ephIds;
 	}
 
 	public EphId getCurrentEphId() {
 		long now = System.currentTimeMillis();
-		DayDate currentDay = new DayDate(now);
-		return getEphIdsForToday(currentDay).get(getEpochCounter(now));
+		List<EphId> ephIds = getKeyState().getEphIds(now);
+		if (ephIds == null) {
+			ephIds = getEphIdsForToday(new DayDate(now));
+		}
+		return ephIds.get(getEpochCounter(now));
 	}
 
 	public void checkContacts(byte[] sk, long onsetDate, long bucketTime, GetContactsCallback contactCallback,
 			MatchCallback matchCallback) {
-		DayDate dayToTest = new DayDate(onsetDate);
-		byte[] skForDay = sk;
-		while (dayToTest.isBeforeOrEquals(bucketTime)) {
-			long contactTimeFrom = dayToTest.getStartOfDayTimestamp();
-			long contactTimeUntil = Math.min(dayToTest.getNextDay().getStartOfDayTimestamp(), bucketTime);
-			List<Contact> contactsOnDay = contactCallback.getContacts(contactTimeFrom, contactTimeUntil);
-			if (contactsOnDay.size() > 0) {
-				//generate all ephIds for day
-				HashSet<EphId> ephIdHashSet = new HashSet<>(createEphIds(skForDay, false));
-
-				//check all contacts if they match any of the ephIds
-				for (Contact contact : contactsOnDay) {
-					if (ephIdHashSet.contains(contact.getEphId())) {
-						matchCallback.contactMatched(contact);
-					}
-				}
-			}
-
-			//update day to next day and rotate sk accordingly
-			dayToTest = dayToTest.getNextDay();
-			skForDay = getSKt1(skForDay);
+		ContactIndex contactIndex = ContactIndex.load(onsetDate, bucketTime, contactCallback);
+		if (contactIndex.isEmpty()) {
+			return;
+		}
+		for (Contact contact : KnownCaseMatcher.matchCase(new KnownCaseMatcher.Case(sk, onsetDate), contactIndex)) {
+			matchCallback.contactMatched(contact);
 		}
 	}
 
@@ -278,74 +324,45 @@ public class CryptoModule {
 //		return broadcastBTGpsHashes;
 //	}
 	@SuppressLint("ApplySharedPref")
-	public void reset() {
+	public synchronized void reset() {
 		try {
 			esp.edit().clear().commit();
+			keyState = KeyState.EMPTY;
+			preparedEphIds = null;
 			init();
 		} catch (Exception ex) {
 			ex.printStackTrace();
 		}
 	}
-	public ArrayList<String> getHashes(BtLocToken btLocToken){
+	/**
+	 * @return the location hashes of {@code btLocToken}, packed back to back with {@link LocHash#HASH_LENGTH} bytes
+	 * each
+	 */
+	public byte[] getHashes(BtLocToken btLocToken){
 
 		DeviceLocation deviceLocation = btLocToken.getDeviceLocation();
 
 		long roundedTimestamp = deviceLocation.getRoundedTimestamp();
 
-		EphId ephId = btLocToken.getEphId();
 		ArrayList<String> locationHashes = deviceLocation.getLocationHashes();
 
-		ArrayList<String> hashes = new ArrayList<>();
-		for(String locHash: locationHashes){
-			// encrypt ephid, lochash, time
-			try {
-				hashes.add(digest(ephId, roundedTimestamp, locHash));
-			}
-			catch (IOException | DigestException | NoSuchPaddingException | NoSuchAlgorithmException | InvalidKeyException | BadPaddingException | IllegalBlockSizeException | InvalidAlgorithmParameterException e){
-				Logger.e(TAG,e);
-			}
+		// encrypt ephid, lochash, time
+		LocHashEngine engine = LocHashEngine.get();
+		engine.init(btLocToken.getEphId());
+		byte[] buffer = new byte[locationHashes.size() * LocHash.HASH_LENGTH];
+		int count = engine.hash(locationHashes, roundedTimestamp, buffer);
+		if (count < locationHashes.size()) {
+			Logger.e(TAG, (locationHashes.size() - count) + " geohashes of unsupported length skipped");
+			buffer = Arrays.copyOf(buffer, count * LocHash.HASH_LENGTH);
 		}
-		return hashes;
-	}
-	private String digest(EphId ephId, long timestamp, String locHash) throws IOException, DigestException, NoSuchPaddingException, NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException, InvalidAlgorithmParameterException {
-//		byte[] source = Bytes.concat(ephId.getData(),locHash.getBytes(), Longs.toByteArray(timestamp));
-//		byte[] crpyt = SCrypt.generate(source, SALT, 4096, 8, 1, 8);
-//		try{
-//			MessageDigest md = MessageDigest.getInstance("SHA-256");
-//			md.update(source);
-//			MessageDigest tc1 = (MessageDigest) md.clone();
-//			byte[] crypt = tc1.digest();
-//			StringBuilder sb = new StringBuilder();
-//			for(byte b:crypt)
-//				sb.append(String.format("%02X",b));
-//			return sb.toString();
-//		}
-//		catch(CloneNotSupportedException | NoSuchAlgorithmException cnse){
-//			throw new DigestException("Couldn't make digest of content");
-//		}
-		BaseEncoding baseEncoding = BaseEncoding.base16();
-		byte[] key = ephId.getData();
-		byte[] plaintext = Bytes.concat(locHash.getBytes(), Longs.toByteArray(timestamp));
-		byte[] iv = new byte[16];
-		IvParameterSpec ivParameterSpec = new IvParameterSpec(iv);
-		SecretKey secretKey = new SecretKeySpec(key, "AES");
-		System.out.println("Secret key (BT token) = "+baseEncoding.encode(secretKey.getEncoded()));
-		System.out.println("Geohash = "+locHash);
-		System.out.println("Rounded time stamp = " + timestamp);
-		final Cipher cipher = Cipher.getInstance("AES/CBC/NoPadding");
-		cipher.init(Cipher.ENCRYPT_MODE, secretKey, ivParameterSpec);
-		byte[] cipherText = cipher.doFinal(plaintext);
-		byte[] truncatedCipherText = Arrays.copyOfRange(cipherText,0,10);
-		String encode = baseEncoding.encode(truncatedCipherText);
-		System.out.println("AES Encrypted ciphertext = "+ encode +"; Size = "+encode.length());
-		return encode;
+		return buffer;
 	}
 
 	public ExposeeRequest getHashesForPublishing(DayDate date, ExposeeAuthMethod exposeeAuthMethod) {
 		// Get BroadcastBtGpsTokens from database
 		System.out.println("Crypto thread:"+Thread.currentThread());
 		Database database = new Database(mContext);
-		ArrayList<String> hashes = database.getBroadcastBtLocHashes();
+		ArrayList<String> hashes = LocHash.toHexList(database.getBroadcastBtLocHashes());
 
 		// return ExposeeRequest with the hashes
 		System.out.println("Sent hashes:"+hashes);
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.crypto;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+
+import org.dpppt.android.sdk.internal.logger.Logger;
+
+/**
+ * Thread confined instances of the JCA primitives used by the SDK, so the provider lookup of {@code getInstance} is
+ * done once per thread instead of once per call.
+ * <p>
+ * A returned instance is only valid until the next call for the same primitive on the same thread, so it must not
+ * be kept or used across calls into other code. {@link MessageDigest} and {@link Mac} are returned reset; a
+ * {@link Mac} or {@link Cipher} still holds the key of its previous use and has to be initialized by the caller.
+ */
+public final class CryptoPrimitives {
+
+	private static final String TAG = "CryptoPrimitives";
+
+	public static final String SHA_256 = "SHA-256";
+	public static final String HMAC_SHA_256 = "HmacSHA256";
+	public static final String AES_CTR = "AES/CTR/NoPadding";
+
+	private static final ThreadLocal<CryptoPrimitives> primitives = new ThreadLocal<CryptoPrimitives>() {
+		@Override
+		protected CryptoPrimitives initialValue() {
+			return new CryptoPrimitives();
+		}
+	};
+
+	private MessageDigest sha256;
+	private Mac hmacSha256;
+	private Cipher aesCtr;
+
+	private CryptoPrimitives() { }
+
+	public static MessageDigest sha256() {
+		CryptoPrimitives p = primitives.get();
+		if (p.sha256 == null) {
+			try {
+				p.sha256 = MessageDigest.getInstance(SHA_256);
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException(SHA_256 + " algorithm must be present!", e);
+			}
+		} else {
+			p.sha256.reset();
+		}
+		return p.sha256;
+	}
+
+	public static Mac hmacSha256() {
+		CryptoPrimitives p = primitives.get();
+		if (p.hmacSha256 == null) {
+			try {
+				p.hmacSha256 = Mac.getInstance(HMAC_SHA_256);
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException(HMAC_SHA_256 + " algorithm must be present!", e);
+			}
+		} else {
+			p.hmacSha256.reset();
+		}
+		return p.hmacSha256;
+	}
+
+	public static Cipher aesCtr() {
+		CryptoPrimitives p = primitives.get();
+		if (p.aesCtr == null) {
+			p.aesCtr = createCipher(AES_CTR);
+		}
+		return p.aesCtr;
+	}
+
+	/**
+	 * Loads the security providers and resolves their services for all primitives, which is shared by all threads,
+	 * so the first {@code getInstance} on the main thread or the BLE callbacks does not pay for it. The thread
+	 * confined instances are still created on first use on each thread. Call off the main thread.
+	 */
+	public static void warmUp() {
+		long start = System.nanoTime();
+		try {
+			MessageDigest.getInstance(SHA_256);
+			Mac.getInstance(HMAC_SHA_256);
+			Cipher.getInstance(AES_CTR);
+			KeyGenerator.getInstance(HMAC_SHA_256);
+		} catch (GeneralSecurityException e) {
+			Logger.e(TAG, e);
+			return;
+		}
+		Logger.d(TAG, "warm up took " + (System.nanoTime() - start) / 1000000 + "ms");
+	}
+
+	private static Cipher createCipher(String transformation) {
+		try {
+			return Cipher.getInstance(transformation);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(transformation + " algorithm must be present!", e);
+		}
+	}
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.crypto;
+
+import android.util.LruCache;
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.dpppt.android.sdk.internal.util.DayDate;
+
+/**
+ * Bounded LRU cache of the EphIDs derived from the keys of known cases, keyed by (key fingerprint, day). A batch of
+ * cases that is matched again after its transaction was rolled back, or a key that is published again in a later
+ * bucket, then needs neither the ratchet nor the AES-CTR keystream. The secret key of every cached day is kept as well,
+ * so the key of the following day is one hash away instead of a ratchet from the onset date.
+ */
+public class DerivedEphIdCache {
+
+	/**
+	 * Upper bound of the memory held by the cached EphIDs and keys, in bytes. Enough for the 21 days of a few hundred
+	 * cases.
+	 */
+	private static final int MAX_SIZE = 4 * 1024 * 1024;
+
+	private static DerivedEphIdCache instance;
+
+	private final LruCache<Key, DerivedDay> cache;
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	public static synchronized DerivedEphIdCache getInstance() {
+		if (instance == null) {
+			instance = new DerivedEphIdCache(MAX_SIZE);
+		}
+		return instance;
+	}
+
+	DerivedEphIdCache(int maxSize) {
+		cache = new LruCache<Key, DerivedDay>(maxSize) {
+			@Override
+			protected int sizeOf(Key key, DerivedDay value) {
+				return value.sk.length + value.ephIds.data.length;
+			}
+		};
+	}
+
+	/**
+	 * The fingerprint of the key is computed once here and shared by all days of the case.
+	 *
+	 * @param key the secret key of the case at {@code onsetDate}
+	 */
+	public CaseEphIds forCase(@NonNull byte[] key, @NonNull DayDate onsetDate) {
+		return new CaseEphIds(key, onsetDate);
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public int getEvictionCount() {
+		return cache.evictionCount();
+	}
+
+	public int size() {
+		return cache.size();
+	}
+
+	public void clear() {
+		cache.evictAll();
+	}
+
+
+	public final class CaseEphIds {
+
+		private final byte[] key;
+		private final DayDate onsetDate;
+		private final byte[] fingerprint;
+
+		private CaseEphIds(byte[] key, DayDate onsetDate) {
+			this.key = key;
+			this.onsetDate = onsetDate;
+			this.fingerprint = CryptoPrimitives.sha256().digest(key);
+		}
+
+		/**
+		 * @return the EphIDs of {@code day}, which must not be before the onset date. The block is shared with the cache
+		 * and must not be modified.
+		 */
+		public EphIdBlock getEphIds(@NonNull DayDate day) {
+			Key cacheKey = new Key(fingerprint, onsetDate, day);
+			DerivedDay derivedDay = cache.get(cacheKey);
+			if (derivedDay != null) {
+				hitCount.incrementAndGet();
+				return derivedDay.ephIds;
+			}
+			missCount.incrementAndGet();
+
+			byte[] sk = getSKForDay(day);
+			EphIdBlock ephIds = new EphIdBlock(new byte[EphIdGenerator.BLOCK_LENGTH]);
+			EphIdGenerator.get().generate(sk, ephIds.data);
+			cache.put(cacheKey, new DerivedDay(sk, ephIds));
+			return ephIds;
+		}
+
+		private byte[] getSKForDay(DayDate day) {
+			if (!onsetDate.isBefore(day)) {
+				return key;
+			}
+			DerivedDay previousDay = cache.get(new Key(fingerprint, onsetDate, day.subtractDays(1)));
+			if (previousDay != null) {
+				return CryptoPrimitives.sha256().digest(previousDay.sk);
+			}
+			byte[] sk = key;
+			for (DayDate d = onsetDate; d.isBefore(day); d = d.getNextDay()) {
+				sk = CryptoPrimitives.sha256().digest(sk);
+			}
+			return sk;
+		}
+
+	}
+
+
+	private static final class Key {
+
+		// SHA-256 of the key, so distinct keys never share an entry
+		private final long fingerprint0;
+		private final long fingerprint1;
+		private final long fingerprint2;
+		private final long fingerprint3;
+		// the same key published with another onset date has other keys per day
+		private final long onsetDate;
+		private final long day;
+
+		Key(byte[] fingerprint, DayDate onsetDate, DayDate day) {
+			this.fingerprint0 = EphIdBlock.readLong(fingerprint, 0);
+			this.fingerprint1 = EphIdBlock.readLong(fingerprint, 8);
+			this.fingerprint2 = EphIdBlock.readLong(fingerprint, 16);
+			this.fingerprint3 = EphIdBlock.readLong(fingerprint, 24);
+			this.onsetDate = onsetDate.getStartOfDayTimestamp();
+			this.day = day.getStartOfDayTimestamp();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			Key other = (Key) o;
+			return fingerprint0 == other.fingerprint0 && fingerprint1 == other.fingerprint1 &&
+					fingerprint2 == other.fingerprint2 && fingerprint3 == other.fingerprint3 &&
+					onsetDate == other.onsetDate && day == other.day;
+		}
+
+		@Override
+		public int hashCode() {
+			// the fingerprint is uniformly distributed, its first half is enough to spread the entries
+			int result = EphId.mix(fingerprint0, fingerprint1);
+			result = 31 * result + (int) (onsetDate ^ (onsetDate >>> 32));
+			result = 31 * result + (int) (day ^ (day >>> 32));
+			return result;
+		}
+
+	}
+
+
+	private static final class DerivedDay {
+
+		private final byte[] sk;
+		private final EphIdBlock ephIds;
+
+		DerivedDay(byte[] sk, EphIdBlock ephIds) {
+			this.sk = sk;
+			this.ephIds = ephIds;
+		}
+
+	}
+
+}
@@ -10,17 +10,47 @@
 
 package org.dpppt.android.sdk.internal.crypto;
 
-import java.util.Arrays;
+import com.google.gson.annotations.JsonAdapter;
 
+/**
+ * A 16 byte EphID held as two big endian longs. The hash is computed once, so grouping and lookups do not
+ * touch the individual bytes again.
+ */
+@JsonAdapter(EphIdJsonAdapter.class)
 public class EphId {
 
-	private byte[] data;
+	private final long high;
+	private final long low;
+	private final int hash;
 
 	public EphId(byte[] data) {
-		this.data = data;
+		if (data == null || data.length != CryptoModule.EPHID_LENGTH) {
+			throw new IllegalArgumentException(
+					"Expected an EphID of " + CryptoModule.EPHID_LENGTH + " bytes, got " + (data == null ? null : data.length));
+		}
+		this.high = EphIdBlock.readLong(data, 0);
+		this.low = EphIdBlock.readLong(data, 8);
+		this.hash = mix(high, low);
+	}
+
+	public EphId(long high, long low) {
+		this.high = high;
+		this.low = low;
+		this.hash = mix(high, low);
+	}
+
+	public long getHigh() {
+		return high;
+	}
+
+	public long getLow() {
+		return low;
 	}
 
 	public byte[] getData() {
+		byte[] data = new byte[CryptoModule.EPHID_LENGTH];
+		writeLong(high, data, 0);
+		writeLong(low, data, 8);
 		return data;
 	}
 
@@ -29,12 +59,33 @@ public class EphId {
 		if (this == o) return true;
 		if (o == null || getClass() != o.getClass()) return false;
 		EphId ephId = (EphId) o;
-		return Arrays.equals(data, ephId.data);
+		return high == ephId.high && low == ephId.low;
 	}
 
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(data);
+		return hash;
+	}
+
+	/**
+	 * Spreads the bits of an EphID for open addressed tables. EphIDs produced by AES are already uniform, but
+	 * EphIDs received over BLE are not under our control.
+	 */
+	static int mix(long high, long low) {
+		long h = high ^ (low * 0x9E3779B97F4A7C15L);
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+
+	private static void writeLong(long value, byte[] target, int offset) {
+		for (int i = 7; i >= 0; i--) {
+			target[offset + i] = (byte) value;
+			value >>>= 8;
+		}
 	}
 
 }
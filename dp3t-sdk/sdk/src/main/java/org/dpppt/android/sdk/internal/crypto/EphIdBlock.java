@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.crypto;
+
+/**
+ * View on the EphIDs of one day, stored back to back in epoch order. EphIDs are read as pairs of big endian longs
+ * instead of being wrapped in one object each.
+ */
+public final class EphIdBlock {
+
+	final byte[] data;
+
+	EphIdBlock(byte[] data) {
+		this.data = data;
+	}
+
+	public int size() {
+		return CryptoModule.NUMBER_OF_EPOCHS_PER_DAY;
+	}
+
+	/**
+	 * @return the first eight bytes of the EphID of {@code epoch}
+	 */
+	public long getHigh(int epoch) {
+		return readLong(data, epoch * CryptoModule.EPHID_LENGTH);
+	}
+
+	/**
+	 * @return the last eight bytes of the EphID of {@code epoch}
+	 */
+	public long getLow(int epoch) {
+		return readLong(data, epoch * CryptoModule.EPHID_LENGTH + 8);
+	}
+
+	/**
+	 * @return the epoch of the given EphID, or -1 if it is not part of this block
+	 */
+	public int indexOf(byte[] ephId) {
+		long high = readLong(ephId, 0);
+		long low = readLong(ephId, 8);
+		for (int epoch = 0; epoch < size(); epoch++) {
+			if (getHigh(epoch) == high && getLow(epoch) == low) {
+				return epoch;
+			}
+		}
+		return -1;
+	}
+
+	public EphId toEphId(int epoch) {
+		return new EphId(getHigh(epoch), getLow(epoch));
+	}
+
+	static long readLong(byte[] bytes, int offset) {
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value = (value << 8) | (bytes[offset + i] & 0xFF);
+		}
+		return value;
+	}
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.crypto;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Derives all EphIDs of a day from its secret key with a single keystream computation. The {@link Mac} and
+ * {@link Cipher} come from {@link CryptoPrimitives}, and every thread owns one generator, so no buffers are allocated
+ * per call.
+ */
+public final class EphIdGenerator {
+
+	public static final int BLOCK_LENGTH = CryptoModule.NUMBER_OF_EPOCHS_PER_DAY * CryptoModule.EPHID_LENGTH;
+
+	private static final byte[] BROADCAST_KEY = "broadcast key".getBytes();
+	private static final byte[] ZEROS = new byte[BLOCK_LENGTH];
+	private static final IvParameterSpec ZERO_IV = new IvParameterSpec(new byte[16]);
+	private static final int PRF_LENGTH = 32;
+
+	private static final ThreadLocal<EphIdGenerator> generators = new ThreadLocal<EphIdGenerator>() {
+		@Override
+		protected EphIdGenerator initialValue() {
+			return new EphIdGenerator();
+		}
+	};
+
+	private final byte[] prf = new byte[PRF_LENGTH];
+	private final EphIdBlock block = new EphIdBlock(new byte[BLOCK_LENGTH]);
+
+	public static EphIdGenerator get() {
+		return generators.get();
+	}
+
+	private EphIdGenerator() { }
+
+	/**
+	 * Generates the EphIDs of the day of {@code sk} in epoch order. The returned block is owned by this generator and
+	 * is overwritten by the next call on the same thread.
+	 */
+	public EphIdBlock generate(byte[] sk) {
+		generate(sk, block.data);
+		return block;
+	}
+
+	/**
+	 * Generates the EphIDs of the day of {@code sk} in epoch order into {@code target}, which must hold at least
+	 * {@link #BLOCK_LENGTH} bytes.
+	 */
+	public void generate(byte[] sk, byte[] target) {
+		try {
+			Mac mac = CryptoPrimitives.hmacSha256();
+			mac.init(new SecretKeySpec(sk, CryptoPrimitives.HMAC_SHA_256));
+			mac.update(BROADCAST_KEY);
+			mac.doFinal(prf, 0);
+
+			// the EphIDs are the AES-CTR keystream, i.e. the encryption of zeros
+			Cipher cipher = CryptoPrimitives.aesCtr();
+			cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(prf, "AES"), ZERO_IV);
+			cipher.doFinal(ZEROS, 0, BLOCK_LENGTH, target, 0);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("HmacSHA256 and AES algorithms must be present!", e);
+		}
+	}
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.crypto;
+
+import java.io.IOException;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Keeps the JSON format of the former {@code byte[] data} field, {@code {"data":[12,-7,...]}}, so EphIDs which
+ * were persisted as part of {@link EphIdsForDay} can still be read.
+ */
+class EphIdJsonAdapter extends TypeAdapter<EphId> {
+
+	private static final String DATA = "data";
+
+	@Override
+	public void write(JsonWriter out, EphId value) throws IOException {
+		if (value == null) {
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		out.name(DATA);
+		out.beginArray();
+		for (byte b : value.getData()) {
+			out.value(b);
+		}
+		out.endArray();
+		out.endObject();
+	}
+
+	@Override
+	public EphId read(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		byte[] data = null;
+		in.beginObject();
+		while (in.hasNext()) {
+			if (DATA.equals(in.nextName())) {
+				data = readBytes(in);
+			} else {
+				in.skipValue();
+			}
+		}
+		in.endObject();
+		try {
+			return new EphId(data);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Invalid EphID", e);
+		}
+	}
+
+	private static byte[] readBytes(JsonReader in) throws IOException {
+		byte[] data = new byte[CryptoModule.EPHID_LENGTH];
+		int length = 0;
+		in.beginArray();
+		while (in.hasNext()) {
+			int value = in.nextInt();
+			if (length == data.length) {
+				throw new IOException("EphID longer than " + CryptoModule.EPHID_LENGTH + " bytes");
+			}
+			data[length++] = (byte) value;
+		}
+		in.endArray();
+		if (length != data.length) {
+			throw new IOException("EphID shorter than " + CryptoModule.EPHID_LENGTH + " bytes");
+		}
+		return data;
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.crypto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Open addressed hash map (linear probing) from EphIDs to values. Keys are kept as pairs of longs, so no
+ * {@link EphId} is retained for an entry and a lookup does not dereference the key object.
+ */
+public class EphIdMap<V> {
+
+	private static final int MIN_CAPACITY = 16;
+	private static final float LOAD_FACTOR = 0.75f;
+
+	private long[] highs;
+	private long[] lows;
+	private Object[] values;
+	private int mask;
+	private int size;
+	private int threshold;
+
+	public EphIdMap() {
+		this(MIN_CAPACITY);
+	}
+
+	public EphIdMap(int expectedSize) {
+		allocate(EphIdSet.capacityFor(expectedSize, MIN_CAPACITY, LOAD_FACTOR));
+	}
+
+	/**
+	 * @return the previous value, or null if there was none
+	 */
+	public V put(EphId ephId, V value) {
+		if (value == null) {
+			throw new NullPointerException("null values are not supported");
+		}
+		if (size >= threshold) {
+			rehash(highs.length << 1);
+		}
+		long high = ephId.getHigh();
+		long low = ephId.getLow();
+		int slot = ephId.hashCode() & mask;
+		while (values[slot] != null) {
+			if (highs[slot] == high && lows[slot] == low) {
+				V previous = valueAt(slot);
+				values[slot] = value;
+				return previous;
+			}
+			slot = (slot + 1) & mask;
+		}
+		highs[slot] = high;
+		lows[slot] = low;
+		values[slot] = value;
+		size++;
+		return null;
+	}
+
+	public V get(EphId ephId) {
+		return get(ephId.getHigh(), ephId.getLow(), ephId.hashCode());
+	}
+
+	public V get(long high, long low) {
+		return get(high, low, EphId.mix(high, low));
+	}
+
+	private V get(long high, long low, int hash) {
+		int slot = hash & mask;
+		while (values[slot] != null) {
+			if (highs[slot] == high && lows[slot] == low) {
+				return valueAt(slot);
+			}
+			slot = (slot + 1) & mask;
+		}
+		return null;
+	}
+
+	public boolean containsKey(EphId ephId) {
+		return get(ephId) != null;
+	}
+
+	/**
+	 * @return the values in no particular order
+	 */
+	public List<V> values() {
+		List<V> result = new ArrayList<>(size);
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null) {
+				result.add(valueAt(i));
+			}
+		}
+		return result;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	private V valueAt(int slot) {
+		return (V) values[slot];
+	}
+
+	private void rehash(int newCapacity) {
+		long[] oldHighs = highs;
+		long[] oldLows = lows;
+		Object[] oldValues = values;
+		allocate(newCapacity);
+		for (int i = 0; i < oldValues.length; i++) {
+			if (oldValues[i] != null) {
+				int slot = EphId.mix(oldHighs[i], oldLows[i]) & mask;
+				while (values[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				highs[slot] = oldHighs[i];
+				lows[slot] = oldLows[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		highs = new long[capacity];
+		lows = new long[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+		threshold = (int) (capacity * LOAD_FACTOR);
+	}
+
+}
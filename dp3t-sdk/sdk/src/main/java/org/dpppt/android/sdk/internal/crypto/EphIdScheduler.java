@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.crypto;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import androidx.annotation.NonNull;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.dpppt.android.sdk.internal.logger.Logger;
+import org.dpppt.android.sdk.internal.util.DayDate;
+
+/**
+ * Keeps the EphIDs of today and tomorrow ready on a background thread. Tomorrow's EphIDs are computed in the last
+ * hour before midnight UTC (without persisting tomorrow's key), and the key rotation after midnight is done here.
+ * {@link #getCurrentEphId()} picks the EphID of the current epoch from this schedule by wall-clock time, so it stays
+ * correct when a tick is late, e.g. because the device was asleep. Listeners are notified on the scheduler thread
+ * when a new epoch starts.
+ */
+public class EphIdScheduler {
+
+	private static final String TAG = "EphIdScheduler";
+
+	private static final long PREPARE_BEFORE_MIDNIGHT = 60 * 60 * 1000L;
+
+	private static EphIdScheduler instance;
+
+	private final CryptoModule cryptoModule;
+	private final List<EpochListener> listeners = new CopyOnWriteArrayList<>();
+
+	private HandlerThread thread;
+	private Handler handler;
+	private long currentEpochStart = -1;
+	private volatile Schedule schedule;
+
+	public static synchronized EphIdScheduler getInstance(@NonNull Context context) {
+		if (instance == null) {
+			instance = new EphIdScheduler(CryptoModule.getInstance(context.getApplicationContext()));
+		}
+		return instance;
+	}
+
+	private EphIdScheduler(CryptoModule cryptoModule) {
+		this.cryptoModule = cryptoModule;
+	}
+
+	public synchronized void start() {
+		if (handler != null) {
+			return;
+		}
+		thread = new HandlerThread(TAG);
+		thread.start();
+		handler = new Handler(thread.getLooper());
+		handler.post(this::onTick);
+	}
+
+	public synchronized void stop() {
+		if (handler == null) {
+			return;
+		}
+		handler.removeCallbacksAndMessages(null);
+		thread.quitSafely();
+		handler = null;
+		thread = null;
+		currentEpochStart = -1;
+	}
+
+	/**
+	 * @return the EphID of the current epoch. Only computed inline if the scheduler has not covered the current day
+	 * yet, e.g. because it was never started.
+	 */
+	public EphId getCurrentEphId() {
+		long now = System.currentTimeMillis();
+		Schedule schedule = this.schedule;
+		if (schedule != null) {
+			EphId ephId = schedule.getEphId(now);
+			if (ephId != null) {
+				return ephId;
+			}
+		}
+		return cryptoModule.getCurrentEphId();
+	}
+
+	public void addEpochListener(@NonNull EpochListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeEpochListener(@NonNull EpochListener listener) {
+		listeners.remove(listener);
+	}
+
+	private void onTick() {
+		long now = System.currentTimeMillis();
+		long epochStart = CryptoModule.getEpochStart(now);
+		DayDate today = new DayDate(now);
+		// stores today's key if the day just started
+		List<EphId> ephIdsForToday = cryptoModule.getEphIdsForToday(today);
+		List<EphId> ephIdsForTomorrow = null;
+		if (now % CryptoModule.MILLISECONDS_PER_DAY >= CryptoModule.MILLISECONDS_PER_DAY - PREPARE_BEFORE_MIDNIGHT) {
+			ephIdsForTomorrow = cryptoModule.prepareEphIdsForDay(today.getNextDay());
+		}
+		Schedule schedule = new Schedule(today.getStartOfDayTimestamp(), ephIdsForToday, ephIdsForTomorrow);
+		this.schedule = schedule;
+		EphId ephId = schedule.getEphId(now);
+
+		boolean epochChanged;
+		synchronized (this) {
+			if (handler == null) {
+				return;
+			}
+			// a callback may fire slightly before the boundary, it is then rescheduled without notifying
+			epochChanged = currentEpochStart != -1 && epochStart != currentEpochStart;
+			currentEpochStart = epochStart;
+			handler.postDelayed(this::onTick, epochStart + CryptoModule.MILLISECONDS_PER_EPOCH - now);
+		}
+		if (epochChanged) {
+			Logger.d(TAG, "new epoch " + epochStart);
+			for (EpochListener listener : listeners) {
+				listener.onEpochChanged(epochStart, ephId);
+			}
+		}
+	}
+
+	/**
+	 * The EphIDs of one day, and of the next day once they are prepared, by epoch.
+	 */
+	private static class Schedule {
+
+		private final long dayStart;
+		private final List<EphId> today;
+		private final List<EphId> tomorrow;
+
+		Schedule(long dayStart, List<EphId> today, List<EphId> tomorrow) {
+			this.dayStart = dayStart;
+			this.today = today;
+			this.tomorrow = tomorrow;
+		}
+
+		/**
+		 * @return the EphID of the epoch containing {@code time}, null if it is not covered by this schedule
+		 */
+		EphId getEphId(long time) {
+			if (time < dayStart) {
+				return null;
+			}
+			long epoch = (time - dayStart) / CryptoModule.MILLISECONDS_PER_EPOCH;
+			if (epoch < CryptoModule.NUMBER_OF_EPOCHS_PER_DAY) {
+				return today.get((int) epoch);
+			}
+			if (tomorrow != null && epoch < 2 * CryptoModule.NUMBER_OF_EPOCHS_PER_DAY) {
+				return tomorrow.get((int) epoch - CryptoModule.NUMBER_OF_EPOCHS_PER_DAY);
+			}
+			return null;
+		}
+
+	}
+
+	public interface EpochListener {
+
+		/**
+		 * Called on the scheduler thread.
+		 */
+		void onEpochChanged(long epochStart, EphId ephId);
+
+	}
+
+}
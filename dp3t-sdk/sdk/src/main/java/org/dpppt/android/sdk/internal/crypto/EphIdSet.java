@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.crypto;
+
+import java.util.Arrays;
+
+/**
+ * Open addressed hash set (linear probing) of EphIDs, kept as pairs of longs in primitive arrays.
+ */
+public class EphIdSet {
+
+	private static final int MIN_CAPACITY = 16;
+	private static final float LOAD_FACTOR = 0.75f;
+
+	private long[] highs;
+	private long[] lows;
+	private long[] used;
+	private int mask;
+	private int size;
+	private int threshold;
+
+	public EphIdSet() {
+		this(MIN_CAPACITY);
+	}
+
+	public EphIdSet(int expectedSize) {
+		allocate(capacityFor(expectedSize, MIN_CAPACITY, LOAD_FACTOR));
+	}
+
+	public static EphIdSet of(EphIdBlock block) {
+		EphIdSet set = new EphIdSet(block.size());
+		for (int epoch = 0; epoch < block.size(); epoch++) {
+			set.add(block.getHigh(epoch), block.getLow(epoch));
+		}
+		return set;
+	}
+
+	public boolean add(long high, long low) {
+		if (size >= threshold) {
+			rehash(highs.length << 1);
+		}
+		int slot = EphId.mix(high, low) & mask;
+		while (isUsed(slot)) {
+			if (highs[slot] == high && lows[slot] == low) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		insertAt(slot, high, low);
+		size++;
+		return true;
+	}
+
+	public boolean add(EphId ephId) {
+		return add(ephId.getHigh(), ephId.getLow());
+	}
+
+	public boolean contains(long high, long low) {
+		return findSlot(high, low, EphId.mix(high, low)) >= 0;
+	}
+
+	public boolean contains(EphId ephId) {
+		return findSlot(ephId.getHigh(), ephId.getLow(), ephId.hashCode()) >= 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(used, 0L);
+		size = 0;
+	}
+
+	private int findSlot(long high, long low, int hash) {
+		int slot = hash & mask;
+		while (isUsed(slot)) {
+			if (highs[slot] == high && lows[slot] == low) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private boolean isUsed(int slot) {
+		return (used[slot >>> 6] & (1L << slot)) != 0;
+	}
+
+	private void insertAt(int slot, long high, long low) {
+		highs[slot] = high;
+		lows[slot] = low;
+		used[slot >>> 6] |= 1L << slot;
+	}
+
+	private void rehash(int newCapacity) {
+		long[] oldHighs = highs;
+		long[] oldLows = lows;
+		long[] oldUsed = used;
+		allocate(newCapacity);
+		for (int i = 0; i < oldHighs.length; i++) {
+			if ((oldUsed[i >>> 6] & (1L << i)) != 0) {
+				int slot = EphId.mix(oldHighs[i], oldLows[i]) & mask;
+				while (isUsed(slot)) {
+					slot = (slot + 1) & mask;
+				}
+				insertAt(slot, oldHighs[i], oldLows[i]);
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		highs = new long[capacity];
+		lows = new long[capacity];
+		used = new long[(capacity + 63) >>> 6];
+		mask = capacity - 1;
+		threshold = (int) (capacity * LOAD_FACTOR);
+	}
+
+	static int capacityFor(int expectedSize, int minCapacity, float loadFactor) {
+		int capacity = minCapacity;
+		while (capacity * loadFactor <= expectedSize) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.crypto;
+
+import android.util.Pair;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.dpppt.android.sdk.internal.util.DayDate;
+
+/**
+ * Immutable snapshot of the secret keys (newest first) and of the EphIDs of the current day, as they were last
+ * written to the encrypted preferences. A new snapshot is published whenever one of them changes.
+ */
+final class KeyState {
+
+	static final KeyState EMPTY = new KeyState(Collections.emptyList(), null);
+
+	private final List<Pair<DayDate, byte[]>> skList;
+	private final DayDate ephIdsDay;
+	private final List<EphId> ephIds;
+
+	KeyState(List<Pair<DayDate, byte[]>> skList, EphIdsForDay ephIdsForDay) {
+		this.skList = Collections.unmodifiableList(new ArrayList<>(skList));
+		if (ephIdsForDay != null && ephIdsForDay.dayDate != null && ephIdsForDay.ephIds != null) {
+			this.ephIdsDay = ephIdsForDay.dayDate;
+			this.ephIds = Collections.unmodifiableList(new ArrayList<>(ephIdsForDay.ephIds));
+		} else {
+			this.ephIdsDay = null;
+			this.ephIds = null;
+		}
+	}
+
+	private KeyState(List<Pair<DayDate, byte[]>> skList, DayDate ephIdsDay, List<EphId> ephIds) {
+		this.skList = skList;
+		this.ephIdsDay = ephIdsDay;
+		this.ephIds = ephIds;
+	}
+
+	List<Pair<DayDate, byte[]>> getSKList() {
+		return skList;
+	}
+
+	Pair<DayDate, byte[]> getNewestSK() {
+		return skList.isEmpty() ? null : skList.get(0);
+	}
+
+	/**
+	 * @return the EphIDs of {@code day}, or null if the snapshot holds the EphIDs of another day
+	 */
+	List<EphId> getEphIds(DayDate day) {
+		return ephIdsDay != null && ephIdsDay.equals(day) ? ephIds : null;
+	}
+
+	/**
+	 * @return the EphIDs of the day containing {@code time}, or null if the snapshot holds the EphIDs of another
+	 * day. Avoids creating a {@link DayDate} on the hot path.
+	 */
+	List<EphId> getEphIds(long time) {
+		if (ephIdsDay == null) {
+			return null;
+		}
+		long dayStart = ephIdsDay.getStartOfDayTimestamp();
+		return time >= dayStart && time - dayStart < CryptoModule.MILLISECONDS_PER_DAY ? ephIds : null;
+	}
+
+	KeyState withSKList(List<Pair<DayDate, byte[]>> newSKList) {
+		return new KeyState(Collections.unmodifiableList(new ArrayList<>(newSKList)), ephIdsDay, ephIds);
+	}
+
+	KeyState withEphIds(EphIdsForDay ephIdsForDay) {
+		return new KeyState(skList, ephIdsForDay.dayDate, Collections.unmodifiableList(new ArrayList<>(ephIdsForDay.ephIds)));
+	}
+
+}
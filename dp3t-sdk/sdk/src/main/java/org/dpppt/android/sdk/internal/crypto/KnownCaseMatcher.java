@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.crypto;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import org.dpppt.android.sdk.internal.database.models.Contact;
+import org.dpppt.android.sdk.internal.util.DayDate;
+
+/**
+ * Matches a batch of known cases against the recorded contacts. Ratcheting the key of a case and deriving the EphIDs
+ * of every day is independent per case, so the cases are spread over a {@link ForkJoinPool} with one worker per core.
+ * All workers probe the same read-only {@link ContactIndex}; the caller only has to apply the matches.
+ */
+public class KnownCaseMatcher {
+
+	/**
+	 * Cases matched by one leaf task before the work is no longer split.
+	 */
+	private static final int CASES_PER_TASK = 8;
+
+	private static ForkJoinPool pool;
+
+	private static synchronized ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		}
+		return pool;
+	}
+
+	/**
+	 * Blocks until all cases are matched; the caller's thread only waits for the pool.
+	 *
+	 * @return for every case (in the same order), the contacts it matched
+	 */
+	public static List<List<Contact>> match(@NonNull List<Case> cases, @NonNull ContactIndex contactIndex) {
+		List<List<Contact>> matches = new ArrayList<>(cases.size());
+		for (int i = 0; i < cases.size(); i++) {
+			matches.add(null);
+		}
+		MatchTask task = new MatchTask(cases, 0, cases.size(), contactIndex, matches);
+		if (ForkJoinTask.inForkJoinPool()) {
+			task.invoke();
+		} else {
+			getPool().invoke(task);
+		}
+		return matches;
+	}
+
+	/**
+	 * Only the days of the index are checked, the EphIDs of days without contacts are never derived. The EphIDs come
+	 * from the {@link DerivedEphIdCache}, so a batch that is matched again after a rollback costs no crypto.
+	 */
+	static List<Contact> matchCase(Case knownCase, ContactIndex contactIndex) {
+		List<Contact> matched = null;
+		DayDate dayToTest = new DayDate(knownCase.onsetDate);
+		DerivedEphIdCache.CaseEphIds caseEphIds = DerivedEphIdCache.getInstance().forCase(knownCase.key, dayToTest);
+		while (dayToTest.getStartOfDayTimestamp() < contactIndex.getTimeUntil()) {
+			EphIdMap<List<Contact>> contactsOfDay = contactIndex.getContacts(dayToTest);
+			if (contactsOfDay != null) {
+				EphIdBlock ephIdsOfDay = caseEphIds.getEphIds(dayToTest);
+				for (int epoch = 0; epoch < ephIdsOfDay.size(); epoch++) {
+					List<Contact> contacts = contactsOfDay.get(ephIdsOfDay.getHigh(epoch), ephIdsOfDay.getLow(epoch));
+					if (contacts != null) {
+						if (matched == null) {
+							matched = new ArrayList<>();
+						}
+						matched.addAll(contacts);
+					}
+				}
+			}
+			dayToTest = dayToTest.getNextDay();
+		}
+		return matched != null ? matched : Collections.emptyList();
+	}
+
+	private static class MatchTask extends RecursiveAction {
+
+		private final List<Case> cases;
+		private final int from;
+		private final int until;
+		private final ContactIndex contactIndex;
+		private final List<List<Contact>> matches;
+
+		MatchTask(List<Case> cases, int from, int until, ContactIndex contactIndex, List<List<Contact>> matches) {
+			this.cases = cases;
+			this.from = from;
+			this.until = until;
+			this.contactIndex = contactIndex;
+			this.matches = matches;
+		}
+
+		@Override
+		protected void compute() {
+			if (until - from <= CASES_PER_TASK) {
+				for (int i = from; i < until; i++) {
+					// every index is written by exactly one task, join() publishes the writes
+					matches.set(i, matchCase(cases.get(i), contactIndex));
+				}
+				return;
+			}
+			int middle = (from + until) >>> 1;
+			invokeAll(new MatchTask(cases, from, middle, contactIndex, matches),
+					new MatchTask(cases, middle, until, contactIndex, matches));
+		}
+
+	}
+
+
+	public static final class Case {
+
+		private final byte[] key;
+		private final long onsetDate;
+
+		public Case(@NonNull byte[] key, long onsetDate) {
+			this.key = key;
+			this.onsetDate = onsetDate;
+		}
+
+		public byte[] getKey() {
+			return key;
+		}
+
+		public long getOnsetDate() {
+			return onsetDate;
+		}
+
+	}
+
+}
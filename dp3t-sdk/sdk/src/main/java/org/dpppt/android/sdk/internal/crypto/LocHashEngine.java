@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.crypto;
+
+import java.util.List;
+
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.dpppt.android.sdk.internal.matching.LocHash;
+
+/**
+ * Computes the location hashes of an EphID: the geohash followed by the rounded timestamp (big endian) is
+ * encrypted with AES-CBC under the EphID and a zero IV, and the first {@link LocHash#HASH_LENGTH} bytes are kept.
+ * Since only part of the first ciphertext block is kept, this is a single AES block encryption of the first 16
+ * plaintext bytes. The lightweight BouncyCastle engine is used directly, so the key schedule is expanded once per
+ * EphID instead of once per hash, and no JCA cipher is created.
+ */
+public final class LocHashEngine {
+
+	private static final int BLOCK_SIZE = 16;
+	private static final int TIMESTAMP_LENGTH = 8;
+
+	private static final ThreadLocal<LocHashEngine> engines = new ThreadLocal<LocHashEngine>() {
+		@Override
+		protected LocHashEngine initialValue() {
+			return new LocHashEngine();
+		}
+	};
+
+	private final AESEngine aes = new AESEngine();
+	private final byte[] plaintext = new byte[BLOCK_SIZE];
+	private final byte[] ciphertext = new byte[BLOCK_SIZE];
+
+	public static LocHashEngine get() {
+		return engines.get();
+	}
+
+	private LocHashEngine() { }
+
+	/**
+	 * Expands the key schedule of {@code ephId}, which is used by all following calls on this thread.
+	 */
+	public void init(EphId ephId) {
+		aes.init(true, new KeyParameter(ephId.getData()));
+	}
+
+	/**
+	 * Writes the hash of one geohash at {@code offset} of {@code target}.
+	 *
+	 * @return false if the plaintext is not a multiple of the AES block size, in which case nothing is written
+	 */
+	public boolean hash(String geohash, long timestamp, byte[] target, int offset) {
+		int length = geohash.length();
+		if ((length + TIMESTAMP_LENGTH) % BLOCK_SIZE != 0) {
+			return false;
+		}
+		// geohashes are plain ASCII (base 32)
+		int n = Math.min(length, BLOCK_SIZE);
+		for (int i = 0; i < n; i++) {
+			plaintext[i] = (byte) geohash.charAt(i);
+		}
+		for (int i = n; i < BLOCK_SIZE; i++) {
+			plaintext[i] = (byte) (timestamp >>> (8 * (TIMESTAMP_LENGTH - 1 - (i - length))));
+		}
+		aes.processBlock(plaintext, 0, ciphertext, 0);
+		System.arraycopy(ciphertext, 0, target, offset, LocHash.HASH_LENGTH);
+		return true;
+	}
+
+	/**
+	 * Writes the hashes of all {@code geohashes} back to back into {@code target}, which must hold
+	 * {@code geohashes.size() * LocHash.HASH_LENGTH} bytes. Geohashes of a length that cannot be encrypted are skipped.
+	 *
+	 * @return the number of hashes written
+	 */
+	public int hash(List<String> geohashes, long timestamp, byte[] target) {
+		int count = 0;
+		for (int i = 0; i < geohashes.size(); i++) {
+			if (hash(geohashes.get(i), timestamp, target, count * LocHash.HASH_LENGTH)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.dpppt.android.sdk.internal.database.models.Contact;
+import org.dpppt.android.sdk.internal.matching.LocHash;
+
+/**
+ * Writes whole batches of rows with one precompiled {@link SQLiteStatement} per table and a single transaction per
+ * batch, so a batch costs one journal commit instead of one per row. Values are bound directly, no
+ * {@code ContentValues} are built. All inserts ignore rows that violate a unique constraint.
+ * <p>
+ * A statement must not be used by two threads at once, so every batch holds the lock of the writer.
+ */
+class BatchWriter {
+
+	private final SQLiteDatabase db;
+	private final byte[] hash = new byte[LocHash.HASH_LENGTH];
+
+	private SQLiteStatement insertReceivedHash;
+	private SQLiteStatement insertBroadcastHash;
+	private SQLiteStatement insertTestHash;
+	private SQLiteStatement insertContact;
+
+	BatchWriter(@NonNull SQLiteDatabase db) {
+		this.db = db;
+	}
+
+	/**
+	 * @param hashes hashes packed back to back with {@link LocHash#HASH_LENGTH} bytes each
+	 * @return the hashes of the rows inserted, packed the same way; hashes already stored for the time bucket are left
+	 * out
+	 */
+	synchronized byte[] insertReceivedHashes(@NonNull byte[] hashes, long time, long timeBucket, long handshakeId) {
+		if (insertReceivedHash == null) {
+			insertReceivedHash = db.compileStatement(insertOrIgnore(ReceivedBtLocHashes.TABLE_NAME,
+					ReceivedBtLocHashes.TIME, ReceivedBtLocHashes.TIME_BUCKET, ReceivedBtLocHashes.HASH,
+					ReceivedBtLocHashes.HANDSHAKE_ID, ReceivedBtLocHashes.DAY));
+		}
+		byte[] inserted = new byte[hashes.length];
+		int insertedLength = 0;
+		db.beginTransaction();
+		try {
+			insertReceivedHash.bindLong(1, time);
+			insertReceivedHash.bindLong(2, timeBucket);
+			insertReceivedHash.bindLong(4, handshakeId);
+			insertReceivedHash.bindLong(5, DayPartitions.getDay(time));
+			for (int offset = 0; offset + LocHash.HASH_LENGTH <= hashes.length; offset += LocHash.HASH_LENGTH) {
+				System.arraycopy(hashes, offset, hash, 0, LocHash.HASH_LENGTH);
+				insertReceivedHash.bindBlob(3, hash);
+				if (insertReceivedHash.executeInsert() != -1) {
+					System.arraycopy(hash, 0, inserted, insertedLength, LocHash.HASH_LENGTH);
+					insertedLength += LocHash.HASH_LENGTH;
+				}
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+		return insertedLength == inserted.length ? inserted : Arrays.copyOf(inserted, insertedLength);
+	}
+
+	/**
+	 * @param hashes hashes packed back to back with {@link LocHash#HASH_LENGTH} bytes each
+	 * @return the hashes of the rows inserted, packed the same way; hashes already stored for the time bucket are left
+	 * out
+	 */
+	synchronized int insertBroadcastHashes(@NonNull byte[] hashes, long time, long timeBucket) {
+		if (insertBroadcastHash == null) {
+			insertBroadcastHash = db.compileStatement(insertOrIgnore(BroadcastBtLocHashes.TABLE_NAME,
+					BroadcastBtLocHashes.TIME, BroadcastBtLocHashes.TIME_BUCKET, BroadcastBtLocHashes.HASH,
+					BroadcastBtLocHashes.DAY));
+		}
+		int inserted = 0;
+		db.beginTransaction();
+		try {
+			insertBroadcastHash.bindLong(1, time);
+			insertBroadcastHash.bindLong(2, timeBucket);
+			insertBroadcastHash.bindLong(4, DayPartitions.getDay(time));
+			for (int offset = 0; offset + LocHash.HASH_LENGTH <= hashes.length; offset += LocHash.HASH_LENGTH) {
+				System.arraycopy(hashes, offset, hash, 0, LocHash.HASH_LENGTH);
+				insertBroadcastHash.bindBlob(3, hash);
+				if (insertBroadcastHash.executeInsert() != -1) {
+					inserted++;
+				}
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+		return inserted;
+	}
+
+	/**
+	 * @return the number of rows inserted
+	 */
+	synchronized int insertTestHashes(@NonNull Collection<String> hashes, long time) {
+		if (insertTestHash == null) {
+			insertTestHash = db.compileStatement(insertOrIgnore(TestHashes.TABLE_NAME, TestHashes.TIME, TestHashes.HASH));
+		}
+		int inserted = 0;
+		db.beginTransaction();
+		try {
+			insertTestHash.bindLong(1, time);
+			for (String testHash : hashes) {
+				insertTestHash.bindString(2, testHash);
+				if (insertTestHash.executeInsert() != -1) {
+					inserted++;
+				}
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+		return inserted;
+	}
+
+	/**
+	 * @return the number of rows inserted
+	 */
+	synchronized int insertContacts(@NonNull Collection<Contact> contacts) {
+		if (insertContact == null) {
+			insertContact = db.compileStatement(insertOrIgnore(Contacts.TABLE_NAME, Contacts.EPHID, Contacts.DATE,
+					Contacts.WINDOW_COUNT));
+		}
+		int inserted = 0;
+		db.beginTransaction();
+		try {
+			for (Contact contact : contacts) {
+				insertContact.bindBlob(1, contact.getEphId().getData());
+				insertContact.bindLong(2, contact.getDate());
+				insertContact.bindLong(3, contact.getWindowCount());
+				if (insertContact.executeInsert() != -1) {
+					inserted++;
+				}
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+		return inserted;
+	}
+
+	private static String insertOrIgnore(String tableName, String... columns) {
+		StringBuilder sql = new StringBuilder("INSERT OR IGNORE INTO ").append(tableName).append(" (");
+		StringBuilder placeholders = new StringBuilder();
+		for (int i = 0; i < columns.length; i++) {
+			if (i > 0) {
+				sql.append(", ");
+				placeholders.append(", ");
+			}
+			sql.append(columns[i]);
+			placeholders.append('?');
+		}
+		return sql.append(") VALUES (").append(placeholders).append(")").toString();
+	}
+
+}
@@ -4,20 +4,39 @@ interface BroadcastBtLocHashes {
     String TABLE_NAME = "BroadcastBtLocHashes";
     String ID = "id";
     String TIME = "time";
+    String TIME_BUCKET = "time_bucket";
     String HASH = "hash";
+    String DAY = "day";
+    String INDEX_HASH = "BroadcastBtLocHashes_hash";
+    String INDEX_DAY = "BroadcastBtLocHashes_day";
     String[] PROJECTION = {
             ID,
             TIME,
-            HASH
+            TIME_BUCKET,
+            HASH,
+            DAY
     };
     static String create() {
         return "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
                 ID + " INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
                 TIME + " INTEGER NOT NULL, " +
-                HASH + " TEXT NOT NULL" +
+                TIME_BUCKET + " INTEGER NOT NULL, " +
+                HASH + " BLOB NOT NULL, " +
+                DAY + " INTEGER NOT NULL DEFAULT 0" +
                 ")";
     }
 
+    static String createHashIndex() {
+        return "CREATE UNIQUE INDEX IF NOT EXISTS " + INDEX_HASH + " ON " + TABLE_NAME + " (" + HASH + ", " + TIME_BUCKET + ")";
+    }
+
+    /**
+     * Backs the deletes of {@link DayPartitions}, which expire whole days.
+     */
+    static String createDayIndex() {
+        return "CREATE INDEX IF NOT EXISTS " + INDEX_DAY + " ON " + TABLE_NAME + " (" + DAY + ")";
+    }
+
     static String drop() {
         return "DROP TABLE IF EXISTS " + TABLE_NAME;
     }
@@ -18,6 +18,7 @@ interface Contacts {
 	String EPHID = "ephID";
 	String WINDOW_COUNT = "windowCount";
 	String ASSOCIATED_KNOWN_CASE = "associated_known_case";
+	String INDEX_ASSOCIATED_KNOWN_CASE = "contacts_associated_known_case";
 
 	String[] PROJECTION = {
 			ID,
@@ -36,6 +37,11 @@ interface Contacts {
 				KnownCases.TABLE_NAME + " (" + KnownCases.ID + ") ON DELETE SET NULL)";
 	}
 
+	static String createKnownCaseIndex() {
+		return "CREATE INDEX IF NOT EXISTS " + INDEX_ASSOCIATED_KNOWN_CASE + " ON " + TABLE_NAME + " (" +
+				ASSOCIATED_KNOWN_CASE + ")";
+	}
+
 	static String drop() {
 		return "DROP TABLE IF EXISTS " + TABLE_NAME;
 	}
@@ -14,33 +14,58 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 import androidx.annotation.NonNull;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.bouncycastle.util.test.Test;
 import org.dpppt.android.sdk.BuildConfig;
 import org.dpppt.android.sdk.internal.AppConfigManager;
 import org.dpppt.android.sdk.internal.BroadcastHelper;
+import org.dpppt.android.sdk.internal.crypto.ContactIndex;
 import org.dpppt.android.sdk.internal.crypto.ContactsFactory;
 import org.dpppt.android.sdk.internal.crypto.CryptoModule;
 import org.dpppt.android.sdk.internal.crypto.EphId;
+import org.dpppt.android.sdk.internal.crypto.KnownCaseMatcher;
 import org.dpppt.android.sdk.internal.database.models.BtLocToken;
 import org.dpppt.android.sdk.internal.database.models.Contact;
 import org.dpppt.android.sdk.internal.database.models.DeviceLocation;
 import org.dpppt.android.sdk.internal.database.models.ExposureDay;
 import org.dpppt.android.sdk.internal.database.models.Handshake;
+import org.dpppt.android.sdk.internal.logger.Logger;
+import org.dpppt.android.sdk.internal.matching.LocHash;
+import org.dpppt.android.sdk.internal.matching.LocHashList;
 import org.dpppt.android.sdk.internal.util.DayDate;
 
 import static android.database.sqlite.SQLiteDatabase.CONFLICT_IGNORE;
 
 public class Database {
+
+	private static final String TAG = "Database";
+
+	/**
+	 * Selects received hashes by their time bucket. A time bucket starts at or before the time its hashes were recorded
+	 * at, so the lower bound on the time is implied and lets the query use the time index.
+	 */
+	private static final String TIME_BUCKET_SELECTION =
+			ReceivedBtLocHashes.TIME + " >= ? AND " + ReceivedBtLocHashes.TIME_BUCKET + " >= ? AND " +
+					ReceivedBtLocHashes.TIME_BUCKET + " < ?";
+
+	private static final List<ReceivedHashListener> receivedHashListeners = new CopyOnWriteArrayList<>();
+
 	Context context;
 	private DatabaseOpenHelper databaseOpenHelper;
 	private DatabaseThread databaseThread;
@@ -52,64 +77,187 @@ public class Database {
 	}
 
 	public void addKnownCase(Context context, @NonNull byte[] key, long onsetDate, long bucketTime) {
+		addKnownCases(context, Collections.singletonList(new KnownCaseMatcher.Case(key, onsetDate)), bucketTime);
+	}
+
+	/**
+	 * Stores the cases of a bucket and matches the new ones against the contacts, in one transaction on the database
+	 * thread: if matching fails, the cases are not stored either, so they are matched when they are added again. The
+	 * contacts are loaded once per day and the EphIDs of the cases are derived in parallel, while the database thread
+	 * waits for them.
+	 */
+	public void addKnownCases(Context context, @NonNull List<KnownCaseMatcher.Case> cases, long bucketTime) {
 		SQLiteDatabase db = databaseOpenHelper.getWritableDatabase();
-		ContentValues values = new ContentValues();
-		values.put(KnownCases.KEY, key);
-		values.put(KnownCases.ONSET, onsetDate);
-		values.put(KnownCases.BUCKET_TIME, bucketTime);
 		databaseThread.post(() -> {
+			db.beginTransaction();
+			try {
+				addKnownCases(context, db, cases, bucketTime);
+				db.setTransactionSuccessful();
+			} catch (RuntimeException e) {
+				Logger.e(TAG, e);
+			} finally {
+				db.endTransaction();
+			}
+		});
+	}
+
+	private void addKnownCases(Context context, SQLiteDatabase db, List<KnownCaseMatcher.Case> cases, long bucketTime) {
+		List<KnownCaseMatcher.Case> newCases = new ArrayList<>(cases.size());
+		List<Long> newCaseIds = new ArrayList<>(cases.size());
+		long contactTimeFrom = Long.MAX_VALUE;
+		for (KnownCaseMatcher.Case knownCase : cases) {
+			ContentValues values = new ContentValues();
+			values.put(KnownCases.KEY, knownCase.getKey());
+			values.put(KnownCases.ONSET, knownCase.getOnsetDate());
+			values.put(KnownCases.BUCKET_TIME, bucketTime);
 			long idOfAddedCase = db.insertWithOnConflict(KnownCases.TABLE_NAME, null, values, CONFLICT_IGNORE);
 			if (idOfAddedCase == -1) {
 				//key was already in the database, so we can ignore it
-				return;
+				continue;
 			}
+			newCases.add(knownCase);
+			newCaseIds.add(idOfAddedCase);
+			contactTimeFrom = Math.min(contactTimeFrom, new DayDate(knownCase.getOnsetDate()).getStartOfDayTimestamp());
+		}
+		if (newCases.isEmpty()) {
+			return;
+		}
+
+		ContactIndex contactIndex = ContactIndex.load(contactTimeFrom, bucketTime, this::getContacts);
+		if (contactIndex.isEmpty()) {
+			return;
+		}
 
-			CryptoModule cryptoModule = CryptoModule.getInstance(context);
-			cryptoModule.checkContacts(key, onsetDate, bucketTime, this::getContacts, (contact) -> {
+		List<List<Contact>> matchesPerCase = KnownCaseMatcher.match(newCases, contactIndex);
+		boolean matched = false;
+		for (int i = 0; i < matchesPerCase.size(); i++) {
+			for (Contact contact : matchesPerCase.get(i)) {
 				ContentValues updateValues = new ContentValues();
-				updateValues.put(Contacts.ASSOCIATED_KNOWN_CASE, idOfAddedCase);
+				updateValues.put(Contacts.ASSOCIATED_KNOWN_CASE, newCaseIds.get(i));
 				db.update(Contacts.TABLE_NAME, updateValues, Contacts.ID + "=" + contact.getId(), null);
-			});
-
-			//compute exposure days
-			List<Contact> allMatchedContacts = getAllMatchedContacts();
-			HashMap<DayDate, List<Contact>> groupedByDay = new HashMap<>();
-			for (Contact contact : allMatchedContacts) {
-				DayDate date = new DayDate(contact.getDate());
-				if (!groupedByDay.containsKey(date)) {
-					groupedByDay.put(date, new ArrayList<>());
+				matched = true;
+			}
+		}
+		if (matched) {
+			updateExposureDays(context, db);
+		}
+	}
+
+	private void updateExposureDays(Context context, SQLiteDatabase db) {
+		//compute exposure days
+		List<Contact> allMatchedContacts = getAllMatchedContacts();
+		HashMap<DayDate, List<Contact>> groupedByDay = new HashMap<>();
+		for (Contact contact : allMatchedContacts) {
+			DayDate date = new DayDate(contact.getDate());
+			if (!groupedByDay.containsKey(date)) {
+				groupedByDay.put(date, new ArrayList<>());
+			}
+			groupedByDay.get(date).add(contact);
+		}
+
+		AppConfigManager appConfigManager = AppConfigManager.getInstance(context);
+		DayDate maxAgeForExposureDay = new DayDate().subtractDays(CryptoModule.NUMBER_OF_DAYS_TO_KEEP_EXPOSED_DAYS);
+		boolean newExposureDaysAdded = false;
+		for (Map.Entry<DayDate, List<Contact>> dayEntry : groupedByDay.entrySet()) {
+			if (dayEntry.getKey().isBefore(maxAgeForExposureDay)) {
+				continue;
+			}
+			int exposureSumForDay = 0;
+			for (Contact contact : dayEntry.getValue()) {
+				exposureSumForDay += contact.getWindowCount();
+			}
+			if (exposureSumForDay >= appConfigManager.getNumberOfWindowsForExposure()) {
+				if (addExposureDay(db, dayEntry.getKey())) {
+					newExposureDaysAdded = true;
 				}
-				groupedByDay.get(date).add(contact);
 			}
+		}
 
-			AppConfigManager appConfigManager = AppConfigManager.getInstance(context);
-			DayDate maxAgeForExposureDay = new DayDate().subtractDays(CryptoModule.NUMBER_OF_DAYS_TO_KEEP_EXPOSED_DAYS);
+		if (newExposureDaysAdded) {
+			BroadcastHelper.sendUpdateBroadcast(context);
+		}
+	}
+
+	/**
+	 * Flags {@code matchedHashes} as found in a bucket and records an exposure day for every day on which at least
+	 * {@link AppConfigManager#getNumberOfHashesForExposure()} distinct flagged hashes were received, like the window
+	 * threshold of contacts. The flags are stored, so matches of different buckets add up while a hash found again is
+	 * counted once. Hashes which were already removed from the database are ignored.
+	 */
+	public void addHashExposures(@NonNull LocHashList matchedHashes) {
+		if (matchedHashes.isEmpty()) {
+			return;
+		}
+		SQLiteDatabase db = databaseOpenHelper.getWritableDatabase();
+		databaseThread.post(() -> {
 			boolean newExposureDaysAdded = false;
-			for (Map.Entry<DayDate, List<Contact>> dayEntry : groupedByDay.entrySet()) {
-				if (dayEntry.getKey().isBefore(maxAgeForExposureDay)) {
-					continue;
-				}
-				int exposureSumForDay = 0;
-				for (Contact contact : dayEntry.getValue()) {
-					exposureSumForDay += contact.getWindowCount();
-				}
-				if (exposureSumForDay >= appConfigManager.getNumberOfWindowsForExposure()) {
-					ContentValues exposureDayValues = new ContentValues();
-					exposureDayValues.put(ExposureDays.REPORT_DATE, System.currentTimeMillis());
-					exposureDayValues.put(ExposureDays.EXPOSED_DATE, dayEntry.getKey().getStartOfDayTimestamp());
-					long id = db.insertWithOnConflict(ExposureDays.TABLE_NAME, null, exposureDayValues, CONFLICT_IGNORE);
-					if (id != -1) {
+			db.beginTransaction();
+			try {
+				Set<Long> days = flagMatchedHashes(db, matchedHashes);
+				int threshold = AppConfigManager.getInstance(context).getNumberOfHashesForExposure();
+				DayDate maxAgeForExposureDay = new DayDate().subtractDays(CryptoModule.NUMBER_OF_DAYS_TO_KEEP_EXPOSED_DAYS);
+				for (long day : days) {
+					DayDate exposedDate = new DayDate(day);
+					if (!exposedDate.isBefore(maxAgeForExposureDay) && countMatchedHashes(db, day) >= threshold &&
+							addExposureDay(db, exposedDate)) {
 						newExposureDaysAdded = true;
 					}
 				}
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
 			}
-
 			if (newExposureDaysAdded) {
 				BroadcastHelper.sendUpdateBroadcast(context);
 			}
 		});
 	}
 
+	/**
+	 * @return the days on which the flagged hashes were received
+	 */
+	private static Set<Long> flagMatchedHashes(SQLiteDatabase db, LocHashList matchedHashes) {
+		SQLiteStatement flag = db.compileStatement("UPDATE " + ReceivedBtLocHashes.TABLE_NAME + " SET " +
+				ReceivedBtLocHashes.MATCHED + " = 1 WHERE " + ReceivedBtLocHashes.HASH + " = ?");
+		// a hash depends on its time bucket, so it belongs to a single day
+		SQLiteStatement queryDay = db.compileStatement("SELECT " + ReceivedBtLocHashes.DAY + " FROM " +
+				ReceivedBtLocHashes.TABLE_NAME + " WHERE " + ReceivedBtLocHashes.HASH + " = ? LIMIT 1");
+		Set<Long> days = new TreeSet<>();
+		byte[] hash = new byte[LocHash.HASH_LENGTH];
+		try {
+			for (int i = 0; i < matchedHashes.size(); i++) {
+				LocHash.write(matchedHashes.getHigh(i), matchedHashes.getLow(i), hash, 0);
+				flag.bindBlob(1, hash);
+				if (flag.executeUpdateDelete() == 0) {
+					// no longer stored
+					continue;
+				}
+				queryDay.bindBlob(1, hash);
+				days.add(queryDay.simpleQueryForLong());
+			}
+		} finally {
+			flag.close();
+			queryDay.close();
+		}
+		return days;
+	}
+
+	private static long countMatchedHashes(SQLiteDatabase db, long day) {
+		String query = "SELECT COUNT(DISTINCT " + ReceivedBtLocHashes.HASH + ") FROM " + ReceivedBtLocHashes.TABLE_NAME +
+				" WHERE " + ReceivedBtLocHashes.DAY + " = ? AND " + ReceivedBtLocHashes.MATCHED + " = 1";
+		return DatabaseUtils.longForQuery(db, query, new String[] { Long.toString(day) });
+	}
+
+	/**
+	 * @return true if the day was not yet recorded as exposure day
+	 */
+	private static boolean addExposureDay(SQLiteDatabase db, DayDate exposedDate) {
+		ContentValues exposureDayValues = new ContentValues();
+		exposureDayValues.put(ExposureDays.REPORT_DATE, System.currentTimeMillis());
+		exposureDayValues.put(ExposureDays.EXPOSED_DATE, exposedDate.getStartOfDayTimestamp());
+		return db.insertWithOnConflict(ExposureDays.TABLE_NAME, null, exposureDayValues, CONFLICT_IGNORE) != -1;
+	}
+
 
 	public void removeOldData() {
 		databaseThread.post(() -> {
@@ -123,9 +271,12 @@ public class Database {
 					new DayDate().subtractDays(CryptoModule.NUMBER_OF_DAYS_TO_KEEP_EXPOSED_DAYS);
 			db.delete(ExposureDays.TABLE_NAME, ExposureDays.REPORT_DATE + " < ?",
 					new String[] { Long.toString(lastDayToKeepMatchedContacts.getStartOfDayTimestamp()) });
-			// TODO delete old location data
-			// TODO delete old broadcastBtLocHashes
-			// TODO delete old receivedBtLocHashes
+			int expired = DayPartitions.dropDaysBefore(db, lastDayToKeep);
+			Logger.d(TAG, "expired " + expired + " location and hash rows");
+			// the vacuum writes the moved pages to the log, so it runs before the checkpoint
+			databaseOpenHelper.vacuum();
+			databaseOpenHelper.checkpoint();
+			Logger.d(TAG, "database " + DatabaseMetrics.getInstance());
 		});
 	}
 
@@ -156,24 +307,37 @@ public class Database {
 	private void addReceivedBtLocHashes(BtLocToken btLocToken, long handshakeId) {
 		System.out.println("Saving received BT token + location hash");
 		System.out.println("Handshake Id = "+handshakeId);
-		SQLiteDatabase db = databaseOpenHelper.getWritableDatabase();
-		ArrayList<String> hashes = CryptoModule.getInstance(context).getHashes(btLocToken);
-		for(String hash: hashes) {
-			ContentValues values = new ContentValues();
-			values.put(ReceivedBtLocHashes.TIME, btLocToken.getDeviceLocation().getTime());
-			values.put(ReceivedBtLocHashes.HASH,hash);
-			values.put(ReceivedBtLocHashes.HANDSHAKE_ID, handshakeId);
-			db.insertWithOnConflict(ReceivedBtLocHashes.TABLE_NAME, null, values, CONFLICT_IGNORE);
+		DeviceLocation deviceLocation = btLocToken.getDeviceLocation();
+		addReceivedBtLocHashes(CryptoModule.getInstance(context).getHashes(btLocToken), deviceLocation.getTime(),
+				deviceLocation.getRoundedTimestamp(), handshakeId);
+	}
+
+	/**
+	 * Stores the hashes of one handshake in a single transaction and notifies the {@link ReceivedHashListener}s of
+	 * the hashes that were inserted.
+	 *
+	 * @param hashes hashes packed back to back with {@link LocHash#HASH_LENGTH} bytes each
+	 * @return the number of hashes that were not yet stored for {@code timeBucket}
+	 */
+	public int addReceivedBtLocHashes(@NonNull byte[] hashes, long time, long timeBucket, long handshakeId) {
+		byte[] inserted = databaseOpenHelper.getBatchWriter().insertReceivedHashes(hashes, time, timeBucket, handshakeId);
+		if (inserted.length > 0) {
+			for (ReceivedHashListener listener : receivedHashListeners) {
+				listener.onReceivedHashesAdded(timeBucket, inserted);
+			}
 		}
+		return inserted.length / LocHash.HASH_LENGTH;
+	}
+
+	public static void addReceivedHashListener(@NonNull ReceivedHashListener listener) {
+		receivedHashListeners.add(listener);
+	}
+
+	public static void removeReceivedHashListener(@NonNull ReceivedHashListener listener) {
+		receivedHashListeners.remove(listener);
 	}
 	public void addTestHashes(ArrayList<String> hashes) {
-		SQLiteDatabase db = databaseOpenHelper.getWritableDatabase();
-		for(String hash: hashes) {
-			ContentValues values = new ContentValues();
-			values.put(TestHashes.TIME, System.currentTimeMillis());
-			values.put(TestHashes.HASH,hash);
-			db.insertWithOnConflict(TestHashes.TABLE_NAME, null, values, CONFLICT_IGNORE);
-		}
+		databaseOpenHelper.getBatchWriter().insertTestHashes(hashes, System.currentTimeMillis());
 	}
 	public ArrayList<String> getTestHashes(int count){
 		SQLiteDatabase db = databaseOpenHelper.getReadableDatabase();
@@ -196,21 +360,60 @@ public class Database {
 		return  DatabaseUtils.queryNumEntries(db, TestHashes.TABLE_NAME);
 	}
 
-	public ArrayList<String> getReceivedBtLocHashes(){
+	/**
+	 * @return all received hashes, packed back to back with {@link LocHash#HASH_LENGTH} bytes each
+	 */
+	public byte[] getReceivedBtLocHashes(){
 		SQLiteDatabase db = databaseOpenHelper.getReadableDatabase();
-		Cursor cursor = db
-				.query(ReceivedBtLocHashes.TABLE_NAME, ReceivedBtLocHashes.PROJECTION, null, null, null, null, ReceivedBtLocHashes.ID);
-		return getReceivedBtLocHashesFromCursor(cursor);
+		Cursor cursor = db.query(ReceivedBtLocHashes.TABLE_NAME, new String[] { ReceivedBtLocHashes.HASH }, null, null,
+				null, null, ReceivedBtLocHashes.ID);
+		return getPackedHashesFromCursor(cursor, ReceivedBtLocHashes.HASH);
+	}
+	/**
+	 * Reports every received hash of a time bucket in {@code [fromTime, untilTime)} to {@code target} with its time
+	 * bucket, one hash per call and in the order of their time.
+	 */
+	public void readReceivedBtLocHashes(long fromTime, long untilTime, @NonNull ReceivedHashListener target) {
+		SQLiteDatabase db = databaseOpenHelper.getReadableDatabase();
+		Cursor cursor = db.query(ReceivedBtLocHashes.TABLE_NAME,
+				new String[] { ReceivedBtLocHashes.TIME_BUCKET, ReceivedBtLocHashes.HASH },
+				TIME_BUCKET_SELECTION, timeBucketSelectionArgs(fromTime, untilTime), null, null, ReceivedBtLocHashes.TIME);
+		int timeBucketIndex = cursor.getColumnIndexOrThrow(ReceivedBtLocHashes.TIME_BUCKET);
+		int hashIndex = cursor.getColumnIndexOrThrow(ReceivedBtLocHashes.HASH);
+		while (cursor.moveToNext()) {
+			target.onReceivedHashesAdded(cursor.getLong(timeBucketIndex), cursor.getBlob(hashIndex));
+		}
+		cursor.close();
 	}
-	public ArrayList<String> getReceivedBtLocHashesFromCursor(Cursor cursor){
-		ArrayList<String> hashes = new ArrayList<>();
+
+	/**
+	 * @return the received hashes of the time buckets in {@code [fromTime, untilTime)}, packed back to back with
+	 * {@link LocHash#HASH_LENGTH} bytes each
+	 */
+	public byte[] getReceivedBtLocHashes(long fromTime, long untilTime) {
+		SQLiteDatabase db = databaseOpenHelper.getReadableDatabase();
+		Cursor cursor = db.query(ReceivedBtLocHashes.TABLE_NAME, new String[] { ReceivedBtLocHashes.HASH },
+				TIME_BUCKET_SELECTION, timeBucketSelectionArgs(fromTime, untilTime), null, null, ReceivedBtLocHashes.ID);
+		return getPackedHashesFromCursor(cursor, ReceivedBtLocHashes.HASH);
+	}
+
+	private static String[] timeBucketSelectionArgs(long fromTime, long untilTime) {
+		String from = Long.toString(fromTime);
+		return new String[] { from, from, Long.toString(untilTime) };
+	}
+
+	private static byte[] getPackedHashesFromCursor(Cursor cursor, String hashColumn) {
+		byte[] hashes = new byte[cursor.getCount() * LocHash.HASH_LENGTH];
+		int hashIndex = cursor.getColumnIndexOrThrow(hashColumn);
+		int offset = 0;
 		while (cursor.moveToNext()) {
-			String hash = cursor.getString(cursor.getColumnIndexOrThrow(ReceivedBtLocHashes.HASH));
-			hashes.add(hash);
+			System.arraycopy(cursor.getBlob(hashIndex), 0, hashes, offset, LocHash.HASH_LENGTH);
+			offset += LocHash.HASH_LENGTH;
 		}
 		cursor.close();
-		return hashes;
+		return offset == hashes.length ? hashes : Arrays.copyOf(hashes, offset);
 	}
+
 	public List<Handshake> getHandshakes() {
 		SQLiteDatabase db = databaseOpenHelper.getReadableDatabase();
 		Cursor cursor = db.query(Handshakes.TABLE_NAME, Handshakes.PROJECTION, null, null, null, null, Handshakes.ID);
@@ -219,21 +422,21 @@ public class Database {
 
 	public List<Handshake> getHandshakes(long maxTime) {
 		SQLiteDatabase db = databaseOpenHelper.getReadableDatabase();
+		// "+id" keeps the planner from walking the whole table in id order instead of using the timestamp index
 		Cursor cursor = db.query(Handshakes.TABLE_NAME, Handshakes.PROJECTION, Handshakes.TIMESTAMP + " < ?",
-				new String[] { "" + maxTime }, null, null, Handshakes.ID);
+				new String[] { "" + maxTime }, null, null, "+" + Handshakes.ID);
 		return getHandshakesFromCursor(cursor);
 	}
 
+	/**
+	 * Reads the handshakes on the reader pool once the writes queued before this call are done, so the result contains
+	 * them. Only handing the read over waits on the database thread, the read itself does not block later writes.
+	 */
 	public void getHandshakes(@NonNull ResultListener<List<Handshake>> resultListener) {
-		databaseThread.post(new Runnable() {
-			List<Handshake> handshakes = new ArrayList<>();
-
-			@Override
-			public void run() {
-				handshakes = getHandshakes();
-				databaseThread.onResult(() -> resultListener.onResult(handshakes));
-			}
-		});
+		databaseThread.post(() -> DatabaseReaderPool.getInstance().execute(() -> {
+			List<Handshake> handshakes = getHandshakes();
+			databaseThread.onResult(() -> resultListener.onResult(handshakes));
+		}));
 	}
 
 	private List<Handshake> getHandshakesFromCursor(Cursor cursor) {
@@ -266,9 +469,7 @@ public class Database {
 
 			List<Handshake> handshakes = getHandshakes(currentEpochStart);
 			List<Contact> contacts = ContactsFactory.mergeHandshakesToContacts(context, handshakes);
-			for (Contact contact : contacts) {
-				addContact(contact);
-			}
+			addContacts(contacts);
 
 			SQLiteDatabase db = databaseOpenHelper.getWritableDatabase();
 			if (!BuildConfig.FLAVOR.equals("calibration")) {
@@ -285,34 +486,51 @@ public class Database {
 		values.put(DeviceLocations.TIME,location.getTime());
 		values.put(DeviceLocations.LATITUDE,location.getLatitude());
 		values.put(DeviceLocations.LONGITUDE,location.getLongitude());
+		values.put(DeviceLocations.DAY, DayPartitions.getDay(location.getTime()));
 		long rowId = db.insertWithOnConflict(DeviceLocations.TABLE_NAME, null, values, CONFLICT_IGNORE);
 
 	}
 	public void saveBroadcastBtLocHashes(BtLocToken btLocToken){
+		saveBroadcastBtLocHashes(Collections.singletonList(btLocToken));
+//		addReceivedBtLocHashes(btLocToken);
+	}
+
+	/**
+	 * Stores the hashes of all {@code btLocTokens} in a single transaction.
+	 */
+	public void saveBroadcastBtLocHashes(@NonNull Collection<BtLocToken> btLocTokens) {
+		CryptoModule cryptoModule = CryptoModule.getInstance(context);
+		List<byte[]> hashesPerToken = new ArrayList<>(btLocTokens.size());
+		for (BtLocToken btLocToken : btLocTokens) {
+			hashesPerToken.add(cryptoModule.getHashes(btLocToken));
+		}
 		SQLiteDatabase db = databaseOpenHelper.getWritableDatabase();
-		ArrayList<String> hashes = CryptoModule.getInstance(context).getHashes(btLocToken);
-		for(String hash: hashes) {
-			ContentValues values = new ContentValues();
-			values.put(BroadcastBtLocHashes.TIME, btLocToken.getDeviceLocation().getTime());
-			values.put(BroadcastBtLocHashes.HASH,hash);
-			db.insertWithOnConflict(BroadcastBtLocHashes.TABLE_NAME, null, values, CONFLICT_IGNORE);
+		BatchWriter batchWriter = databaseOpenHelper.getBatchWriter();
+		// take the lock of the writer before the transaction, in the same order as its own batches
+		synchronized (batchWriter) {
+			db.beginTransaction();
+			try {
+				int i = 0;
+				for (BtLocToken btLocToken : btLocTokens) {
+					DeviceLocation deviceLocation = btLocToken.getDeviceLocation();
+					batchWriter.insertBroadcastHashes(hashesPerToken.get(i++), deviceLocation.getTime(),
+							deviceLocation.getRoundedTimestamp());
+				}
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
 		}
-//		addReceivedBtLocHashes(btLocToken);
 	}
-	public ArrayList<String> getBroadcastBtLocHashes(){
+
+	/**
+	 * @return all broadcast hashes, packed back to back with {@link LocHash#HASH_LENGTH} bytes each
+	 */
+	public byte[] getBroadcastBtLocHashes(){
 		SQLiteDatabase db = databaseOpenHelper.getReadableDatabase();
-		Cursor cursor = db
-				.query(BroadcastBtLocHashes.TABLE_NAME, BroadcastBtLocHashes.PROJECTION, null, null, null, null, BroadcastBtLocHashes.ID);
-		return getBroadcastBtLocHashesFromCursor(cursor);
-	}
-	public ArrayList<String> getBroadcastBtLocHashesFromCursor(Cursor cursor){
-		ArrayList<String> hashes = new ArrayList<>();
-		while (cursor.moveToNext()) {
-			String hash = cursor.getString(cursor.getColumnIndexOrThrow(BroadcastBtLocHashes.HASH));
-			hashes.add(hash);
-		}
-		cursor.close();
-		return hashes;
+		Cursor cursor = db.query(BroadcastBtLocHashes.TABLE_NAME, new String[] { BroadcastBtLocHashes.HASH }, null, null,
+				null, null, BroadcastBtLocHashes.ID);
+		return getPackedHashesFromCursor(cursor, BroadcastBtLocHashes.HASH);
 	}
 
 	public ArrayList<DeviceLocation> getDeviceLocations(){
@@ -335,13 +553,11 @@ public class Database {
 		cursor.close();
 		return deviceLocations;
 	}
-	private void addContact(Contact contact) {
-		SQLiteDatabase db = databaseOpenHelper.getWritableDatabase();
-		ContentValues values = new ContentValues();
-		values.put(Contacts.EPHID, contact.getEphId().getData());
-		values.put(Contacts.DATE, contact.getDate());
-		values.put(Contacts.WINDOW_COUNT, contact.getWindowCount());
-		db.insertWithOnConflict(Contacts.TABLE_NAME, null, values, CONFLICT_IGNORE);
+	/**
+	 * Stores all {@code contacts} in a single transaction, contacts already stored for the same date are ignored.
+	 */
+	private void addContacts(Collection<Contact> contacts) {
+		databaseOpenHelper.getBatchWriter().insertContacts(contacts);
 	}
 
 	public List<Contact> getContacts() {
@@ -361,8 +577,9 @@ public class Database {
 	public List<Contact> getAllMatchedContacts() {
 		SQLiteDatabase db = databaseOpenHelper.getReadableDatabase();
 		Cursor cursor = db
-				.query(Contacts.TABLE_NAME, Contacts.PROJECTION, Contacts.ASSOCIATED_KNOWN_CASE + "!=0", null, null, null,
-						Contacts.ID);
+				// known case ids are positive; unlike "!=0", a range can be answered from the index ("+id" as above)
+				.query(Contacts.TABLE_NAME, Contacts.PROJECTION, Contacts.ASSOCIATED_KNOWN_CASE + ">0", null, null, null,
+						"+" + Contacts.ID);
 		return getContactsFromCursor(cursor);
 	}
 
@@ -423,5 +640,12 @@ public class Database {
 		databaseThread.post(runnable);
 	}
 
+	/**
+	 * Runs a read on the reader pool, where it does not wait for the writes queued on the database thread.
+	 */
+	public void runOnReaderThread(Runnable runnable) {
+		DatabaseReaderPool.getInstance().execute(runnable);
+	}
+
 
 }
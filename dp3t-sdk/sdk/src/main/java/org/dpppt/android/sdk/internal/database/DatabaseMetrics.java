@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.database;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contention counters of the database. For the writes posted to the {@link DatabaseThread} and the reads run by the
+ * {@link DatabaseReaderPool}, the time a task waited for its thread and the time it ran are recorded separately, so a
+ * growing wait time shows that work queues up behind other work.
+ */
+public final class DatabaseMetrics {
+
+	private static final DatabaseMetrics instance = new DatabaseMetrics();
+
+	private final Counter writes = new Counter();
+	private final Counter reads = new Counter();
+	private final AtomicLong checkpoints = new AtomicLong();
+	private final AtomicLong busyCheckpoints = new AtomicLong();
+	private final AtomicLong checkpointedPages = new AtomicLong();
+	private final AtomicLong vacuums = new AtomicLong();
+	private final AtomicLong vacuumedPages = new AtomicLong();
+
+	public static DatabaseMetrics getInstance() {
+		return instance;
+	}
+
+	private DatabaseMetrics() { }
+
+	public Counter getWrites() {
+		return writes;
+	}
+
+	public Counter getReads() {
+		return reads;
+	}
+
+	public long getCheckpoints() {
+		return checkpoints.get();
+	}
+
+	/**
+	 * @return the number of checkpoints that could not complete because a reader or writer was active
+	 */
+	public long getBusyCheckpoints() {
+		return busyCheckpoints.get();
+	}
+
+	public long getCheckpointedPages() {
+		return checkpointedPages.get();
+	}
+
+	void recordCheckpoint(boolean busy, long pages) {
+		checkpoints.incrementAndGet();
+		if (busy) {
+			busyCheckpoints.incrementAndGet();
+		}
+		checkpointedPages.addAndGet(Math.max(pages, 0));
+	}
+
+	public long getVacuums() {
+		return vacuums.get();
+	}
+
+	/**
+	 * @return the number of pages returned to the file system by incremental vacuums
+	 */
+	public long getVacuumedPages() {
+		return vacuumedPages.get();
+	}
+
+	void recordVacuum(long pages) {
+		vacuums.incrementAndGet();
+		vacuumedPages.addAndGet(Math.max(pages, 0));
+	}
+
+	@NonNull
+	@Override
+	public String toString() {
+		return "writes: " + writes + ", reads: " + reads + ", checkpoints: " + getCheckpoints() + " (" +
+				getBusyCheckpoints() + " busy, " + getCheckpointedPages() + " pages), vacuums: " + getVacuums() + " (" +
+				getVacuumedPages() + " pages)";
+	}
+
+
+	public static final class Counter {
+
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong totalWaitNanos = new AtomicLong();
+		private final AtomicLong maxWaitNanos = new AtomicLong();
+		private final AtomicLong totalRunNanos = new AtomicLong();
+
+		void record(long waitNanos, long runNanos) {
+			count.incrementAndGet();
+			totalWaitNanos.addAndGet(waitNanos);
+			totalRunNanos.addAndGet(runNanos);
+			long max;
+			do {
+				max = maxWaitNanos.get();
+			} while (waitNanos > max && !maxWaitNanos.compareAndSet(max, waitNanos));
+		}
+
+		public long getCount() {
+			return count.get();
+		}
+
+		public long getTotalWaitMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+		}
+
+		public long getMaxWaitMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+		}
+
+		public long getTotalRunMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(totalRunNanos.get());
+		}
+
+		@NonNull
+		@Override
+		public String toString() {
+			return getCount() + " tasks, waited " + getTotalWaitMillis() + "ms (max " + getMaxWaitMillis() + "ms), ran " +
+					getTotalRunMillis() + "ms";
+		}
+
+	}
+
+}
@@ -10,7 +10,10 @@
 package org.dpppt.android.sdk.internal.database;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 import androidx.annotation.NonNull;
 
@@ -21,13 +24,40 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import org.dpppt.android.sdk.internal.logger.Logger;
+
 class DatabaseOpenHelper extends SQLiteOpenHelper {
 
-	private static final int DATABASE_VERSION = 1;
+	private static final String TAG = "DatabaseOpenHelper";
+
+	private static final int DATABASE_VERSION = Migrations.LATEST_VERSION;
 	private static final String DATABASE_NAME = "dp3t_sdk.db";
 
+	/**
+	 * Pages in the write-ahead log after which a commit checkpoints it into the database (the SQLite default).
+	 */
+	private static final int WAL_AUTOCHECKPOINT_PAGES = 1000;
+	/**
+	 * Size to which the write-ahead log is truncated after a checkpoint, so a burst of writes does not keep a large log
+	 * file around.
+	 */
+	private static final long WAL_SIZE_LIMIT = 1024 * 1024;
+
+	private static final int AUTO_VACUUM_INCREMENTAL = 2;
+	/**
+	 * Free pages below which {@link #vacuum()} leaves the file as it is, so it does not run for every few deleted rows.
+	 */
+	private static final long VACUUM_MIN_FREE_PAGES = 256;
+	/**
+	 * Pages returned to the file system by one {@link #vacuum()}, which bounds the time the writers wait for it. The
+	 * remaining free pages are returned by the next runs.
+	 */
+	private static final int VACUUM_MAX_PAGES = 4096;
+
 	private static DatabaseOpenHelper instance;
 
+	private BatchWriter batchWriter;
+
 	static DatabaseOpenHelper getInstance(@NonNull Context context) {
 		if (instance == null) {
 			instance = new DatabaseOpenHelper(context);
@@ -37,6 +67,74 @@ class DatabaseOpenHelper extends SQLiteOpenHelper {
 
 	private DatabaseOpenHelper(@NonNull Context context) {
 		super(context, DATABASE_NAME, null, DATABASE_VERSION);
+		// readers use their own connections and no longer wait for the handshake writer
+		setWriteAheadLoggingEnabled(true);
+	}
+
+	synchronized BatchWriter getBatchWriter() {
+		if (batchWriter == null) {
+			batchWriter = new BatchWriter(getWritableDatabase());
+		}
+		return batchWriter;
+	}
+
+	@Override
+	public void onConfigure(SQLiteDatabase db) {
+		super.onConfigure(db);
+		// both pragmas return the new value, so they must be run as queries
+		DatabaseUtils.longForQuery(db, "PRAGMA wal_autocheckpoint=" + WAL_AUTOCHECKPOINT_PAGES, null);
+		DatabaseUtils.longForQuery(db, "PRAGMA journal_size_limit=" + WAL_SIZE_LIMIT, null);
+		// only takes effect for a new file, an existing file is converted by the next vacuum()
+		db.execSQL("PRAGMA auto_vacuum=INCREMENTAL");
+	}
+
+	/**
+	 * Copies the whole write-ahead log into the database and truncates it. Blocks new writers until the readers that
+	 * still need the log are done, so it is only run at the end of the maintenance on the database thread.
+	 */
+	void checkpoint() {
+		Cursor cursor = getWritableDatabase().rawQuery("PRAGMA wal_checkpoint(TRUNCATE)", null);
+		try {
+			if (cursor.moveToFirst()) {
+				// columns: busy, pages in the log, pages checkpointed
+				DatabaseMetrics.getInstance().recordCheckpoint(cursor.getInt(0) != 0, cursor.getLong(2));
+			}
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Returns free pages at the end of the file to the file system, once enough pages were freed by deleted rows. A
+	 * file created without incremental auto-vacuum is converted by a full vacuum the first time, which rewrites the
+	 * whole file. Like {@link #checkpoint()}, it is only run by the maintenance on the database thread.
+	 */
+	void vacuum() {
+		SQLiteDatabase db = getWritableDatabase();
+		if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null) != AUTO_VACUUM_INCREMENTAL) {
+			try {
+				db.execSQL("PRAGMA auto_vacuum=INCREMENTAL");
+				db.execSQL("VACUUM");
+				DatabaseMetrics.getInstance().recordVacuum(0);
+			} catch (SQLiteException e) {
+				// e.g. not enough space for the copy of the file, the next maintenance tries again
+				Logger.e(TAG, e);
+			}
+			return;
+		}
+		long freePages = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+		if (freePages < VACUUM_MIN_FREE_PAGES) {
+			return;
+		}
+		// every freed page is one result row, so the cursor must be read to the end to free all of them
+		Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum(" + VACUUM_MAX_PAGES + ")", null);
+		try {
+			cursor.getCount();
+		} finally {
+			cursor.close();
+		}
+		DatabaseMetrics.getInstance()
+				.recordVacuum(freePages - DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null));
 	}
 
 	@Override
@@ -46,7 +144,8 @@ class DatabaseOpenHelper extends SQLiteOpenHelper {
 
 	@Override
 	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-		//empty for now
+		// runs inside the transaction of SQLiteOpenHelper, so a failed migration leaves the old schema untouched
+		Migrations.migrate(db, oldVersion, newVersion);
 	}
 
 	@Override
@@ -66,17 +165,29 @@ class DatabaseOpenHelper extends SQLiteOpenHelper {
 				TestHashes.drop(),
 				KnownCases.create(),
 				Handshakes.create(),
+				Handshakes.createTimestampIndex(),
 				Contacts.create(),
+				Contacts.createKnownCaseIndex(),
 				ExposureDays.create(),
+				ExposureDays.createReportDateIndex(),
 				DeviceLocations.create(),
+				DeviceLocations.createTimeIndex(),
+				DeviceLocations.createDayIndex(),
 				BroadcastBtLocHashes.create(),
+				BroadcastBtLocHashes.createHashIndex(),
+				BroadcastBtLocHashes.createDayIndex(),
 				ReceivedBtLocHashes.create(),
+				ReceivedBtLocHashes.createTimeIndex(),
+				ReceivedBtLocHashes.createHashIndex(),
+				ReceivedBtLocHashes.createDayIndex(),
 				TestHashes.create()
 		).run();
 	}
 
 
 	public void exportDatabaseTo(Context context, OutputStream targetOut) throws IOException {
+		// only the database file is exported, so it must contain everything written to the log
+		checkpoint();
 		File db = context.getDatabasePath(DATABASE_NAME);
 		FileInputStream fileInputStream = new FileInputStream(db);
 		byte[] buf = new byte[2048];
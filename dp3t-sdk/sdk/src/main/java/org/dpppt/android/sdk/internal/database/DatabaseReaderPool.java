@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.database;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs asynchronous reads off the {@link DatabaseThread}, so they are not queued behind the writes posted for every
+ * handshake. With write-ahead logging the framework gives every thread that does not hold the write connection one of
+ * its read connections, so the readers see the last committed state without waiting for a running write.
+ * <p>
+ * The pool is smaller than the framework's pool of read connections, which leaves connections for the synchronous
+ * reads done on the calling threads (e.g. by the sync).
+ */
+class DatabaseReaderPool {
+
+	private static final int NUMBER_OF_READERS = 2;
+
+	private static DatabaseReaderPool instance;
+
+	private final ExecutorService executor;
+
+	static synchronized DatabaseReaderPool getInstance() {
+		if (instance == null) {
+			instance = new DatabaseReaderPool();
+		}
+		return instance;
+	}
+
+	private DatabaseReaderPool() {
+		AtomicInteger threadCount = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(NUMBER_OF_READERS, runnable -> {
+			Thread thread = new Thread(runnable, "DatabaseReader-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	void execute(@NonNull Runnable runnable) {
+		long postedAt = System.nanoTime();
+		executor.execute(() -> {
+			long startedAt = System.nanoTime();
+			try {
+				runnable.run();
+			} finally {
+				DatabaseMetrics.getInstance().getReads().record(startedAt - postedAt, System.nanoTime() - startedAt);
+			}
+		});
+	}
+
+}
@@ -41,7 +41,15 @@ class DatabaseThread extends HandlerThread {
 	}
 
 	void post(@NonNull Runnable runnable) {
-		handler.post(runnable);
+		long postedAt = System.nanoTime();
+		handler.post(() -> {
+			long startedAt = System.nanoTime();
+			try {
+				runnable.run();
+			} finally {
+				DatabaseMetrics.getInstance().getWrites().record(startedAt - postedAt, System.nanoTime() - startedAt);
+			}
+		});
 	}
 
 	void onResult(@NonNull Runnable runnable) {
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import androidx.annotation.NonNull;
+
+import org.dpppt.android.sdk.internal.util.DayDate;
+
+/**
+ * Retention of the high volume tables, which get rows for every location update and every handshake. Every row of
+ * these tables carries the {@link DayDate} it was recorded on as its day key, and an index on the key makes the days
+ * partitions of the table: expiring a day is one range delete on the index instead of a scan over all rows.
+ * <p>
+ * The pages freed by the deletes are returned to the file system by {@link DatabaseOpenHelper#vacuum()}.
+ */
+final class DayPartitions {
+
+	/**
+	 * Pairs of table and day key column.
+	 */
+	private static final String[][] PARTITIONED_TABLES = {
+			{ DeviceLocations.TABLE_NAME, DeviceLocations.DAY },
+			{ BroadcastBtLocHashes.TABLE_NAME, BroadcastBtLocHashes.DAY },
+			{ ReceivedBtLocHashes.TABLE_NAME, ReceivedBtLocHashes.DAY },
+	};
+
+	/**
+	 * @return the day key of a row recorded at {@code time}
+	 */
+	static long getDay(long time) {
+		return new DayDate(time).getStartOfDayTimestamp();
+	}
+
+	/**
+	 * Deletes all days before {@code firstDayToKeep} from all partitioned tables, in a single transaction.
+	 *
+	 * @return the number of rows deleted
+	 */
+	static int dropDaysBefore(@NonNull SQLiteDatabase db, @NonNull DayDate firstDayToKeep) {
+		String[] args = { Long.toString(firstDayToKeep.getStartOfDayTimestamp()) };
+		int deleted = 0;
+		db.beginTransaction();
+		try {
+			for (String[] table : PARTITIONED_TABLES) {
+				deleted += db.delete(table[0], table[1] + " < ?", args);
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+		return deleted;
+	}
+
+	private DayPartitions() { }
+
+}
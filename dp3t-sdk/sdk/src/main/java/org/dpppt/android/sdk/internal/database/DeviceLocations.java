@@ -7,6 +7,9 @@ interface DeviceLocations {
     String TIME = "time";
     String LATITUDE = "latitude";
     String LONGITUDE = "longitude";
+    String DAY = "day";
+    String INDEX_TIME = "locations_time";
+    String INDEX_DAY = "locations_day";
 //    String HASHES = "hashes";
 
 //    String ALTITUDE = "altitude";
@@ -21,7 +24,8 @@ interface DeviceLocations {
             ID,
             TIME,
             LATITUDE,
-            LONGITUDE
+            LONGITUDE,
+            DAY
 //            HASHES
 //            ,
 //            ALTITUDE,
@@ -38,7 +42,8 @@ interface DeviceLocations {
                 ID + " INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
                 TIME + " INTEGER NOT NULL, " +
                 LATITUDE + " DOUBLE NOT NULL, " +
-                LONGITUDE + " DOUBLE NOT NULL " +
+                LONGITUDE + " DOUBLE NOT NULL, " +
+                DAY + " INTEGER NOT NULL DEFAULT 0 " +
 //                HASHES +" TEXT"+
 //                ","+
 //                ALTITUDE + " DOUBLE,"+
@@ -51,6 +56,17 @@ interface DeviceLocations {
                 ")";
     }
 
+    static String createTimeIndex() {
+        return "CREATE INDEX IF NOT EXISTS " + INDEX_TIME + " ON " + TABLE_NAME + " (" + TIME + ")";
+    }
+
+    /**
+     * Backs the deletes of {@link DayPartitions}, which expire whole days.
+     */
+    static String createDayIndex() {
+        return "CREATE INDEX IF NOT EXISTS " + INDEX_DAY + " ON " + TABLE_NAME + " (" + DAY + ")";
+    }
+
     static String drop() {
         return "DROP TABLE IF EXISTS " + TABLE_NAME;
     }
@@ -16,6 +16,7 @@ interface ExposureDays {
 	String ID = "id";
 	String EXPOSED_DATE = "exposed_date";
 	String REPORT_DATE = "report_date";
+	String INDEX_REPORT_DATE = "exposure_days_report_date";
 
 	String[] PROJECTION = {
 			ID,
@@ -30,6 +31,10 @@ interface ExposureDays {
 				"UNIQUE (" + EXPOSED_DATE + ") )";
 	}
 
+	static String createReportDateIndex() {
+		return "CREATE INDEX IF NOT EXISTS " + INDEX_REPORT_DATE + " ON " + TABLE_NAME + " (" + REPORT_DATE + ")";
+	}
+
 	static String drop() {
 		return "DROP TABLE IF EXISTS " + TABLE_NAME;
 	}
@@ -23,6 +23,7 @@ interface Handshakes {
 	String TIMESTAMP_NANOS = "timestamp_nanos";
 	String LATITUDE = "latitude";
 	String LONGITUDE = "longitude";
+	String INDEX_TIMESTAMP = "handshakes_timestamp";
 	String[] PROJECTION = {
 			ID,
 			TIMESTAMP,
@@ -51,6 +52,10 @@ interface Handshakes {
 				")";
 	}
 
+	static String createTimestampIndex() {
+		return "CREATE INDEX IF NOT EXISTS " + INDEX_TIMESTAMP + " ON " + TABLE_NAME + " (" + TIMESTAMP + ")";
+	}
+
 	static String drop() {
 		return "DROP TABLE IF EXISTS " + TABLE_NAME;
 	}
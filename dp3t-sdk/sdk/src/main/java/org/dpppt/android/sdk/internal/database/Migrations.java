@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dpppt.android.sdk.internal.logger.Logger;
+import org.dpppt.android.sdk.internal.matching.LocHash;
+
+/**
+ * Ordered steps that upgrade the schema one version at a time. {@code STEPS[i]} upgrades version {@code i + 1} to
+ * {@code i + 2}, so a new schema version is added by appending a step and changing the table definitions used by
+ * {@link DatabaseOpenHelper#recreateTables(SQLiteDatabase)} accordingly.
+ * <p>
+ * A step only uses the SQL of its own version and never the current table definitions, which keep changing. The
+ * migration test checks that upgrading the first schema ends in the same schema as a fresh install.
+ */
+final class Migrations {
+
+	private static final String TAG = "Migrations";
+
+	/**
+	 * Length of the time buckets the location hashes of version 2 were computed for.
+	 */
+	private static final long V2_TIME_BUCKET_LENGTH = 5 * 60 * 1000L;
+
+	interface Migration {
+
+		void migrate(@NonNull SQLiteDatabase db);
+
+	}
+
+	private static final Migration[] STEPS = {
+			Migrations::storeHashesAsBlobs,
+			Migrations::indexRangeFilters,
+			Migrations::partitionByDay,
+			Migrations::flagMatchedHashes,
+	};
+
+	static final int LATEST_VERSION = STEPS.length + 1;
+
+	/**
+	 * Runs all steps from {@code fromVersion} to {@code toVersion}. Must be called inside a transaction, so a failing
+	 * step leaves the old schema untouched.
+	 */
+	static void migrate(@NonNull SQLiteDatabase db, int fromVersion, int toVersion) {
+		if (fromVersion < 1 || toVersion > LATEST_VERSION) {
+			throw new IllegalArgumentException("Cannot migrate from version " + fromVersion + " to " + toVersion);
+		}
+		for (int version = fromVersion; version < toVersion; version++) {
+			STEPS[version - 1].migrate(db);
+			Logger.i(TAG, "migrated database to version " + (version + 1));
+		}
+	}
+
+	/**
+	 * Version 2 stores the location hashes as {@link LocHash#HASH_LENGTH} byte blobs instead of hex strings, together
+	 * with the time bucket that went into the hash, so a unique index can drop hashes that were recorded twice.
+	 */
+	private static void storeHashesAsBlobs(SQLiteDatabase db) {
+		rebuildWithBlobHashes(db, "ReceivedBtLocHashes",
+				"CREATE TABLE ReceivedBtLocHashes (id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+						"time INTEGER NOT NULL, time_bucket INTEGER NOT NULL, hash BLOB NOT NULL, " +
+						"handshake_id INTEGER NOT NULL)",
+				"CREATE INDEX IF NOT EXISTS ReceivedBtLocHashes_time ON ReceivedBtLocHashes (time)",
+				"CREATE UNIQUE INDEX IF NOT EXISTS ReceivedBtLocHashes_hash ON ReceivedBtLocHashes (hash, time_bucket)");
+		rebuildWithBlobHashes(db, "BroadcastBtLocHashes",
+				"CREATE TABLE BroadcastBtLocHashes (id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+						"time INTEGER NOT NULL, time_bucket INTEGER NOT NULL, hash BLOB NOT NULL)",
+				"CREATE UNIQUE INDEX IF NOT EXISTS BroadcastBtLocHashes_hash ON BroadcastBtLocHashes (hash, time_bucket)");
+	}
+
+	/**
+	 * Version 3 adds an index for every range filter of {@link Database} that was not yet backed by one. The date
+	 * filters on contacts and known cases already use the unique constraints, whose first column is the date.
+	 */
+	private static void indexRangeFilters(SQLiteDatabase db) {
+		db.execSQL("CREATE INDEX IF NOT EXISTS ReceivedBtLocHashes_time ON ReceivedBtLocHashes (time)");
+		db.execSQL("CREATE INDEX IF NOT EXISTS handshakes_timestamp ON handshakes (timestamp)");
+		db.execSQL("CREATE INDEX IF NOT EXISTS contacts_associated_known_case ON contacts (associated_known_case)");
+		db.execSQL("CREATE INDEX IF NOT EXISTS exposure_days_report_date ON exposure_days (report_date)");
+		db.execSQL("CREATE INDEX IF NOT EXISTS locations_time ON locations (time)");
+	}
+
+	/**
+	 * Version 4 adds the day key of {@link DayPartitions} to the location and hash tables. The column is added with a
+	 * default, which SQLite requires for a new non-null column, and filled with the start of the UTC day of each row. The
+	 * create statements of the tables define the column the same way, so both paths end with the same schema.
+	 */
+	private static void partitionByDay(SQLiteDatabase db) {
+		String[][] tables = {
+				{ "locations", "locations_day" },
+				{ "BroadcastBtLocHashes", "BroadcastBtLocHashes_day" },
+				{ "ReceivedBtLocHashes", "ReceivedBtLocHashes_day" },
+		};
+		for (String[] table : tables) {
+			db.execSQL("ALTER TABLE " + table[0] + " ADD COLUMN day INTEGER NOT NULL DEFAULT 0");
+			db.execSQL("UPDATE " + table[0] + " SET day = time - time % 86400000");
+			db.execSQL("CREATE INDEX IF NOT EXISTS " + table[1] + " ON " + table[0] + " (day)");
+		}
+	}
+
+	/**
+	 * Version 5 flags the received hashes found in a bucket, so an exposure day is only recorded once enough distinct
+	 * hashes of the day were matched, in any number of buckets.
+	 */
+	private static void flagMatchedHashes(SQLiteDatabase db) {
+		db.execSQL("ALTER TABLE ReceivedBtLocHashes ADD COLUMN matched INTEGER NOT NULL DEFAULT 0");
+	}
+
+	/**
+	 * Rebuilds a table of version 1 with the hash column converted to blobs, all other columns are copied as they are.
+	 * Rows with a malformed hash or a hash already recorded in the same bucket are dropped.
+	 */
+	private static void rebuildWithBlobHashes(SQLiteDatabase db, String tableName, String... createStatements) {
+		String oldTableName = tableName + "_v1";
+		db.execSQL("ALTER TABLE " + tableName + " RENAME TO " + oldTableName);
+		// indices move with the renamed table, drop them so they can be recreated for the new one
+		Cursor indexCursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'index' AND tbl_name = ? AND sql IS NOT NULL",
+				new String[] { oldTableName });
+		List<String> indexNames = new ArrayList<>();
+		while (indexCursor.moveToNext()) {
+			indexNames.add(indexCursor.getString(0));
+		}
+		indexCursor.close();
+		for (String indexName : indexNames) {
+			db.execSQL("DROP INDEX IF EXISTS " + indexName);
+		}
+		for (String createStatement : createStatements) {
+			db.execSQL(createStatement);
+		}
+
+		int skipped = 0;
+		Cursor cursor = db.query(oldTableName, null, null, null, null, null, null);
+		String[] columnNames = cursor.getColumnNames();
+		int hashIndex = cursor.getColumnIndexOrThrow("hash");
+		int timeIndex = cursor.getColumnIndexOrThrow("time");
+		byte[] hash = new byte[LocHash.HASH_LENGTH];
+		ContentValues values = new ContentValues();
+		while (cursor.moveToNext()) {
+			values.clear();
+			for (int i = 0; i < columnNames.length; i++) {
+				if (i != hashIndex) {
+					copyValue(cursor, i, columnNames[i], values);
+				}
+			}
+			try {
+				String hex = cursor.getString(hashIndex);
+				LocHash.write(LocHash.parseHigh(hex), LocHash.parseLow(hex), hash, 0);
+			} catch (IllegalArgumentException | NullPointerException e) {
+				skipped++;
+				continue;
+			}
+			values.put("hash", hash);
+			long time = cursor.getLong(timeIndex);
+			values.put("time_bucket", time / V2_TIME_BUCKET_LENGTH * V2_TIME_BUCKET_LENGTH);
+			if (db.insertWithOnConflict(tableName, null, values, SQLiteDatabase.CONFLICT_IGNORE) == -1) {
+				skipped++;
+			}
+		}
+		cursor.close();
+		db.execSQL("DROP TABLE " + oldTableName);
+		if (skipped > 0) {
+			Logger.i(TAG, "dropped " + skipped + " rows while migrating " + tableName);
+		}
+	}
+
+	/**
+	 * Copies a value with the type it is stored with, so no column is converted on the way.
+	 */
+	private static void copyValue(Cursor cursor, int index, String columnName, ContentValues values) {
+		switch (cursor.getType(index)) {
+			case Cursor.FIELD_TYPE_INTEGER:
+				values.put(columnName, cursor.getLong(index));
+				break;
+			case Cursor.FIELD_TYPE_FLOAT:
+				values.put(columnName, cursor.getDouble(index));
+				break;
+			case Cursor.FIELD_TYPE_STRING:
+				values.put(columnName, cursor.getString(index));
+				break;
+			case Cursor.FIELD_TYPE_BLOB:
+				values.put(columnName, cursor.getBlob(index));
+				break;
+			default:
+				values.putNull(columnName);
+				break;
+		}
+	}
+
+	private Migrations() { }
+
+}
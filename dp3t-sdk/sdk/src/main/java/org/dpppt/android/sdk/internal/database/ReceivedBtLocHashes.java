@@ -4,23 +4,53 @@ interface ReceivedBtLocHashes {
     String TABLE_NAME = "ReceivedBtLocHashes";
     String ID = "id";
     String TIME = "time";
+    String TIME_BUCKET = "time_bucket";
     String HASH = "hash";
     String HANDSHAKE_ID = "handshake_id";
+    String DAY = "day";
+    String MATCHED = "matched";
+    String INDEX_TIME = "ReceivedBtLocHashes_time";
+    String INDEX_HASH = "ReceivedBtLocHashes_hash";
+    String INDEX_DAY = "ReceivedBtLocHashes_day";
     String[] PROJECTION = {
             ID,
             TIME,
+            TIME_BUCKET,
             HASH,
-            HANDSHAKE_ID
+            HANDSHAKE_ID,
+            DAY,
+            MATCHED
     };
     static String create() {
         return "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
                 ID + " INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
                 TIME + " INTEGER NOT NULL, " +
-                HASH + " TEXT NOT NULL, " +
-                HANDSHAKE_ID + " INTEGER NOT NULL"+
+                TIME_BUCKET + " INTEGER NOT NULL, " +
+                HASH + " BLOB NOT NULL, " +
+                HANDSHAKE_ID + " INTEGER NOT NULL, " +
+                DAY + " INTEGER NOT NULL DEFAULT 0, " +
+                MATCHED + " INTEGER NOT NULL DEFAULT 0" +
                 ")";
     }
 
+    static String createTimeIndex() {
+        return "CREATE INDEX IF NOT EXISTS " + INDEX_TIME + " ON " + TABLE_NAME + " (" + TIME + ")";
+    }
+
+    /**
+     * Makes inserts of a hash that was already recorded in the same time bucket no-ops.
+     */
+    static String createHashIndex() {
+        return "CREATE UNIQUE INDEX IF NOT EXISTS " + INDEX_HASH + " ON " + TABLE_NAME + " (" + HASH + ", " + TIME_BUCKET + ")";
+    }
+
+    /**
+     * Backs the deletes of {@link DayPartitions}, which expire whole days.
+     */
+    static String createDayIndex() {
+        return "CREATE INDEX IF NOT EXISTS " + INDEX_DAY + " ON " + TABLE_NAME + " (" + DAY + ")";
+    }
+
     static String drop() {
         return "DROP TABLE IF EXISTS " + TABLE_NAME;
     }
@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.database;
+
+import org.dpppt.android.sdk.internal.matching.LocHash;
+
+/**
+ * Notified on the database thread after new received hashes have been written.
+ */
+public interface ReceivedHashListener {
+
+	/**
+	 * @param timeBucket start of the time bucket the hashes were computed for. A bucket released after it can contain
+	 * the hashes, as the hashes of the infected devices are published at the earliest during the time bucket.
+	 * @param hashes the new hashes, packed back to back with {@link LocHash#HASH_LENGTH} bytes each
+	 */
+	void onReceivedHashesAdded(long timeBucket, byte[] hashes);
+
+}
@@ -11,8 +11,9 @@ import java.util.Set;
 import com.github.davidmoten.geo.GeoHash;
 
 public class DeviceLocation {
+    public static final long DEFAULT_INTERVAL = 5*60*1000;
     private int id;
-    private long interval = 5*60*1000;
+    private long interval = DEFAULT_INTERVAL;
     private long time;
     private double latitude;
     private double longitude;
@@ -23,6 +23,7 @@ import java.util.UUID;
 
 import org.dpppt.android.sdk.internal.AppConfigManager;
 import org.dpppt.android.sdk.internal.crypto.CryptoModule;
+import org.dpppt.android.sdk.internal.crypto.EphIdScheduler;
 import org.dpppt.android.sdk.internal.logger.Logger;
 
 public class BleServer {
@@ -55,15 +56,14 @@ public class BleServer {
 	}
 
 	private byte[] getAdvertiseData() {
-		CryptoModule cryptoModule = CryptoModule.getInstance(context);
-		byte[] advertiseData = cryptoModule.getCurrentEphId().getData();
+		byte[] advertiseData = EphIdScheduler.getInstance(context).getCurrentEphId().getData();
 		String calibrationTestDeviceName = AppConfigManager.getInstance(context).getCalibrationTestDeviceName();
 		if (calibrationTestDeviceName != null) {
 			byte[] nameBytes = calibrationTestDeviceName.getBytes();
 			for (int i = 0; i < AppConfigManager.CALIBRATION_TEST_DEVICE_NAME_LENGTH; i++) {
 				advertiseData[i] = nameBytes[i];
 			}
-			long curMinInEpoch = ((System.currentTimeMillis() - cryptoModule.getCurrentEpochStart()) / (60 * 1000));
+			long curMinInEpoch = ((System.currentTimeMillis() - CryptoModule.getInstance(context).getCurrentEpochStart()) / (60 * 1000));
 			byte[] minData = Long.toString(curMinInEpoch).getBytes();
 			advertiseData[AppConfigManager.CALIBRATION_TEST_DEVICE_NAME_LENGTH] = minData[0];
 			if (minData.length > 1) {
@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.matching;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps the exposed hashes of downloaded buckets on disk, so received hashes can be matched again later without
+ * downloading the buckets again. Every bucket is one segment file of sorted, distinct {@link LocHash#HASH_LENGTH}
+ * byte records named after its batch release time. Segments are memory mapped on first use and searched with a
+ * binary search, so the hashes never have to be loaded onto the heap.
+ */
+public class ExposedHashStore {
+
+	private static final String DIRECTORY_NAME = "exposed_hashes";
+	private static final String SEGMENT_SUFFIX = ".seg";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private static ExposedHashStore instance;
+
+	private final File directory;
+	private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+	public static synchronized ExposedHashStore getInstance(@NonNull Context context) {
+		if (instance == null) {
+			instance = new ExposedHashStore(new File(context.getFilesDir(), DIRECTORY_NAME));
+		}
+		return instance;
+	}
+
+	public ExposedHashStore(@NonNull File directory) {
+		this.directory = directory;
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			String name = file.getName();
+			if (name.endsWith(SEGMENT_SUFFIX)) {
+				try {
+					long batchReleaseTime = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+					segments.put(batchReleaseTime, new Segment(file));
+				} catch (NumberFormatException e) {
+					file.delete();
+				}
+			} else if (name.endsWith(TEMP_SUFFIX)) {
+				// left over from an interrupted write
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Stores the hashes of a bucket, replacing a previously stored segment of the same bucket.
+	 */
+	public void putSegment(long batchReleaseTime, @NonNull LocHashList hashes) throws IOException {
+		try (SegmentWriter writer = openSegment(batchReleaseTime)) {
+			for (int i = 0; i < hashes.size(); i++) {
+				writer.write(hashes.getHigh(i), hashes.getLow(i));
+			}
+			writer.commit();
+		}
+	}
+
+	/**
+	 * Starts a segment for a bucket whose hashes are written one at a time while it is streamed. The hashes go
+	 * straight to a temporary file; the segment replaces a previously stored segment of the same bucket once it is
+	 * committed. A writer closed without commit discards what was written.
+	 */
+	public SegmentWriter openSegment(long batchReleaseTime) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create " + directory);
+		}
+		// a unique file per writer, so concurrent syncs of the same bucket do not write to or delete each other's file
+		return new SegmentWriter(batchReleaseTime, File.createTempFile(batchReleaseTime + "-", TEMP_SUFFIX, directory));
+	}
+
+	private synchronized void commitSegment(long batchReleaseTime, File tempFile) throws IOException {
+		File file = new File(directory, batchReleaseTime + SEGMENT_SUFFIX);
+		if (!tempFile.renameTo(file)) {
+			tempFile.delete();
+			throw new IOException("Could not write segment " + file);
+		}
+		segments.put(batchReleaseTime, new Segment(file));
+	}
+
+	public synchronized boolean hasSegment(long batchReleaseTime) {
+		return segments.containsKey(batchReleaseTime);
+	}
+
+	/**
+	 * @return the number of stored buckets containing the hash
+	 */
+	public int count(long high, int low) throws IOException {
+		return count(high, low, Long.MIN_VALUE);
+	}
+
+	/**
+	 * @return the number of stored buckets released after {@code timeBucket} containing the hash
+	 */
+	public synchronized int count(long high, int low, long timeBucket) throws IOException {
+		int count = 0;
+		for (Segment segment : segments.tailMap(timeBucket, false).values()) {
+			if (segment.contains(high, low)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Deletes the segments of all buckets released before {@code batchReleaseTime}.
+	 */
+	public synchronized void removeSegmentsBefore(long batchReleaseTime) {
+		Iterator<Map.Entry<Long, Segment>> iterator = segments.headMap(batchReleaseTime).entrySet().iterator();
+		while (iterator.hasNext()) {
+			iterator.next().getValue().file.delete();
+			iterator.remove();
+		}
+	}
+
+	public synchronized void clear() {
+		removeSegmentsBefore(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Appends records to the temporary file of a segment. Records written in ascending order are committed as they
+	 * are; otherwise the file is sorted and deduplicated in place through a writable mapping on commit, so a bucket
+	 * is never held on the heap.
+	 */
+	public class SegmentWriter implements Closeable {
+
+		private final long batchReleaseTime;
+		private final File tempFile;
+		private final OutputStream out;
+		private final byte[] record = new byte[LocHash.HASH_LENGTH];
+		private int size = 0;
+		private boolean strictlyAscending = true;
+		private long lastHigh;
+		private int lastLow;
+		private boolean committed = false;
+
+		private SegmentWriter(long batchReleaseTime, File tempFile) throws IOException {
+			this.batchReleaseTime = batchReleaseTime;
+			this.tempFile = tempFile;
+			this.out = new BufferedOutputStream(new FileOutputStream(tempFile));
+		}
+
+		public void write(long high, int low) throws IOException {
+			if (size > 0 && LocHash.compare(lastHigh, lastLow, high, low) >= 0) {
+				strictlyAscending = false;
+			}
+			lastHigh = high;
+			lastLow = low;
+			LocHash.write(high, low, record, 0);
+			out.write(record);
+			size++;
+		}
+
+		public void commit() throws IOException {
+			out.close();
+			if (!strictlyAscending) {
+				sortDistinct();
+			}
+			commitSegment(batchReleaseTime, tempFile);
+			committed = true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!committed) {
+				out.close();
+				tempFile.delete();
+			}
+		}
+
+		private void sortDistinct() throws IOException {
+			int distinct;
+			try (RandomAccessFile randomAccessFile = new RandomAccessFile(tempFile, "rw");
+				 FileChannel channel = randomAccessFile.getChannel()) {
+				MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+				heapSort(records, size);
+				distinct = 0;
+				for (int i = 0; i < size; i++) {
+					if (distinct == 0 || compareRecords(records, distinct - 1, i) != 0) {
+						if (distinct != i) {
+							copyRecord(records, i, distinct);
+						}
+						distinct++;
+					}
+				}
+				records.force();
+			}
+			if (distinct < size) {
+				try (RandomAccessFile randomAccessFile = new RandomAccessFile(tempFile, "rw")) {
+					randomAccessFile.setLength((long) distinct * LocHash.HASH_LENGTH);
+				}
+			}
+		}
+
+	}
+
+	private static void heapSort(MappedByteBuffer records, int size) {
+		byte[] a = new byte[LocHash.HASH_LENGTH];
+		byte[] b = new byte[LocHash.HASH_LENGTH];
+		for (int i = size / 2 - 1; i >= 0; i--) {
+			siftDown(records, i, size, a, b);
+		}
+		for (int end = size - 1; end > 0; end--) {
+			swapRecords(records, 0, end, a, b);
+			siftDown(records, 0, end, a, b);
+		}
+	}
+
+	private static void siftDown(MappedByteBuffer records, int root, int size, byte[] a, byte[] b) {
+		while (true) {
+			int child = 2 * root + 1;
+			if (child >= size) {
+				return;
+			}
+			if (child + 1 < size && compareRecords(records, child, child + 1) < 0) {
+				child++;
+			}
+			if (compareRecords(records, root, child) >= 0) {
+				return;
+			}
+			swapRecords(records, root, child, a, b);
+			root = child;
+		}
+	}
+
+	private static int compareRecords(MappedByteBuffer records, int i, int j) {
+		int offsetI = i * LocHash.HASH_LENGTH;
+		int offsetJ = j * LocHash.HASH_LENGTH;
+		return LocHash.compare(records.getLong(offsetI), records.getShort(offsetI + 8) & 0xFFFF,
+				records.getLong(offsetJ), records.getShort(offsetJ + 8) & 0xFFFF);
+	}
+
+	private static void swapRecords(MappedByteBuffer records, int i, int j, byte[] a, byte[] b) {
+		int offsetI = i * LocHash.HASH_LENGTH;
+		int offsetJ = j * LocHash.HASH_LENGTH;
+		records.position(offsetI);
+		records.get(a);
+		records.position(offsetJ);
+		records.get(b);
+		records.position(offsetI);
+		records.put(b);
+		records.position(offsetJ);
+		records.put(a);
+	}
+
+	private static void copyRecord(MappedByteBuffer records, int from, int to) {
+		int offsetFrom = from * LocHash.HASH_LENGTH;
+		int offsetTo = to * LocHash.HASH_LENGTH;
+		records.putLong(offsetTo, records.getLong(offsetFrom));
+		records.putShort(offsetTo + 8, records.getShort(offsetFrom + 8));
+	}
+
+	private static class Segment {
+
+		private final File file;
+		private MappedByteBuffer buffer;
+		private int size;
+
+		Segment(File file) {
+			this.file = file;
+		}
+
+		boolean contains(long high, int low) throws IOException {
+			MappedByteBuffer records = map();
+			int from = 0;
+			int to = size - 1;
+			while (from <= to) {
+				int middle = (from + to) >>> 1;
+				int offset = middle * LocHash.HASH_LENGTH;
+				int c = LocHash.compare(records.getLong(offset), records.getShort(offset + 8) & 0xFFFF, high, low);
+				if (c < 0) {
+					from = middle + 1;
+				} else if (c > 0) {
+					to = middle - 1;
+				} else {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private MappedByteBuffer map() throws IOException {
+			if (buffer == null) {
+				try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+					 FileChannel channel = randomAccessFile.getChannel()) {
+					// the mapping stays valid after the channel is closed
+					buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				}
+				size = buffer.capacity() / LocHash.HASH_LENGTH;
+			}
+			return buffer;
+		}
+
+	}
+
+}
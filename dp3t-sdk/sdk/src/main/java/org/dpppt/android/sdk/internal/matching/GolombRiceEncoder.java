@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.matching;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes a bucket as a sorted list of hashes in the format read by {@link GolombRiceLocHashStream}:
+ * <pre>
+ * int32  number of hashes
+ * int8   rice parameter k
+ * bits   per hash: rice(delta of the high part to the previous hash) followed by the 16 bit low part
+ * </pre>
+ * A rice code is the quotient {@code delta >>> k} in unary (ones terminated by a zero) followed by the k lower
+ * bits of the delta. Quotients of {@link GolombRiceLocHashStream#ESCAPE_QUOTIENT} or more are written as that many
+ * ones followed by the raw 64 bit delta, so outliers can not blow up the output.
+ */
+public final class GolombRiceEncoder {
+
+	/**
+	 * Sorts and deduplicates the given list and writes it to {@code out}.
+	 */
+	public static void encode(LocHashList hashes, OutputStream out) throws IOException {
+		hashes.sortDistinct();
+		int count = hashes.size();
+		int k = riceParameter(hashes);
+
+		DataOutputStream header = new DataOutputStream(out);
+		header.writeInt(count);
+		header.writeByte(k);
+		header.flush();
+
+		BitWriter writer = new BitWriter(out);
+		long previousHigh = 0;
+		for (int i = 0; i < count; i++) {
+			long high = hashes.getHigh(i);
+			long delta = high - previousHigh;
+			long quotient = delta >>> k;
+			if (quotient >= GolombRiceLocHashStream.ESCAPE_QUOTIENT) {
+				writer.writeOnes(GolombRiceLocHashStream.ESCAPE_QUOTIENT);
+				writer.writeBits(delta, 64);
+			} else {
+				writer.writeOnes((int) quotient);
+				writer.writeBits(0, 1);
+				writer.writeBits(delta, k);
+			}
+			writer.writeBits(hashes.getLow(i), GolombRiceLocHashStream.LOW_BITS);
+			previousHigh = high;
+		}
+		writer.flush();
+	}
+
+	public static byte[] encode(LocHashList hashes) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		encode(hashes, out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Picks k as log2 of the mean gap between the sorted high parts, which is close to optimal for the
+	 * geometrically distributed gaps of uniformly distributed hashes.
+	 */
+	private static int riceParameter(LocHashList sortedHashes) {
+		int count = sortedHashes.size();
+		if (count == 0) {
+			return 0;
+		}
+		// unsigned division of the largest value by the count
+		long largest = sortedHashes.getHigh(count - 1);
+		long meanGap = ((largest >>> 1) / count) << 1;
+		if (meanGap == 0) {
+			return 0;
+		}
+		return 63 - Long.numberOfLeadingZeros(meanGap);
+	}
+
+	private static class BitWriter {
+
+		private final OutputStream out;
+		private int buffer;
+		private int bufferedBits;
+
+		BitWriter(OutputStream out) {
+			this.out = out;
+		}
+
+		void writeOnes(int count) throws IOException {
+			for (int i = 0; i < count; i++) {
+				writeBit(1);
+			}
+		}
+
+		void writeBits(long value, int numberOfBits) throws IOException {
+			for (int i = numberOfBits - 1; i >= 0; i--) {
+				writeBit((int) (value >>> i) & 1);
+			}
+		}
+
+		void flush() throws IOException {
+			if (bufferedBits > 0) {
+				out.write(buffer << (8 - bufferedBits));
+				buffer = 0;
+				bufferedBits = 0;
+			}
+			out.flush();
+		}
+
+		private void writeBit(int bit) throws IOException {
+			buffer = (buffer << 1) | bit;
+			bufferedBits++;
+			if (bufferedBits == 8) {
+				out.write(buffer);
+				buffer = 0;
+				bufferedBits = 0;
+			}
+		}
+
+	}
+
+	private GolombRiceEncoder() { }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.matching;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming decoder for buckets written by {@link GolombRiceEncoder}. Hashes are produced in ascending order, one at
+ * a time, while the input is read.
+ */
+public class GolombRiceLocHashStream implements LocHashStream {
+
+	public static final String MEDIA_TYPE = "application/x-dp3t-golomb-rice";
+
+	static final int ESCAPE_QUOTIENT = 31;
+	static final int LOW_BITS = 16;
+
+	private static final int MAX_RICE_PARAMETER = 63;
+
+	private final InputStream in;
+	private final int count;
+	private final int k;
+
+	private int decoded = 0;
+	private int buffer;
+	private int bufferedBits = 0;
+	private long high = 0;
+	private int low;
+
+	public GolombRiceLocHashStream(InputStream in) throws IOException {
+		this.in = in;
+		DataInputStream header = new DataInputStream(in);
+		count = header.readInt();
+		k = header.readUnsignedByte();
+		if (count < 0 || k > MAX_RICE_PARAMETER) {
+			throw new IOException("Invalid golomb-rice header: count " + count + ", k " + k);
+		}
+	}
+
+	@Override
+	public boolean next() throws IOException {
+		if (decoded == count) {
+			return false;
+		}
+		int quotient = 0;
+		while (quotient < ESCAPE_QUOTIENT && readBit() == 1) {
+			quotient++;
+		}
+		long delta;
+		if (quotient == ESCAPE_QUOTIENT) {
+			delta = readBits(64);
+		} else {
+			delta = ((long) quotient << k) | readBits(k);
+		}
+		high += delta;
+		low = (int) readBits(LOW_BITS);
+		decoded++;
+		return true;
+	}
+
+	@Override
+	public long high() {
+		return high;
+	}
+
+	@Override
+	public int low() {
+		return low;
+	}
+
+	@Override
+	public boolean isSorted() {
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	private long readBits(int numberOfBits) throws IOException {
+		long value = 0;
+		for (int i = 0; i < numberOfBits; i++) {
+			value = (value << 1) | readBit();
+		}
+		return value;
+	}
+
+	private int readBit() throws IOException {
+		if (bufferedBits == 0) {
+			buffer = in.read();
+			if (buffer < 0) {
+				throw new EOFException("Golomb-rice stream ended after " + decoded + " of " + count + " hashes");
+			}
+			bufferedBits = 8;
+		}
+		bufferedBits--;
+		return (buffer >>> bufferedBits) & 1;
+	}
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.matching;
+
+import androidx.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.dpppt.android.sdk.internal.database.Database;
+import org.dpppt.android.sdk.internal.database.ReceivedHashListener;
+
+/**
+ * Holds the received hashes for the duration of one sync, so they are read from the database once instead of once
+ * per bucket. Hashes written while the sync is running are queued by the database thread and merged in before the
+ * next bucket is matched. Must be closed to stop listening for new hashes.
+ * <p>
+ * A bucket is only matched against the hashes of the time buckets in its own range: the hashes of a bucket were
+ * computed by the infected devices for time buckets before its release and within their retention period. The index
+ * of the session is built once and keeps the time bucket of every hash, so the range of a bucket is applied when a
+ * hash is probed instead of selecting the hashes of every bucket.
+ */
+public class HashMatchingSession implements Closeable, ReceivedHashListener {
+
+	private final LocHashTimeIndex index = new LocHashTimeIndex();
+	private LocHashList sortedHashes;
+	private int sortCount;
+
+	private final Object pendingLock = new Object();
+	private LocHashList pendingHashes = new LocHashList();
+	private long[] pendingTimeBuckets = new long[16];
+
+	/**
+	 * Loads the received hashes of the time buckets in {@code [fromTime, untilTime)}. Hashes written during the session
+	 * are added regardless of their time bucket.
+	 */
+	public static HashMatchingSession open(@NonNull Database database, long fromTime, long untilTime) {
+		HashMatchingSession session = new HashMatchingSession();
+		// register before loading, so no hash written in between is lost (duplicates are dropped)
+		Database.addReceivedHashListener(session);
+		try {
+			database.readReceivedBtLocHashes(fromTime, untilTime, session);
+		} catch (RuntimeException e) {
+			Database.removeReceivedHashListener(session);
+			throw e;
+		}
+		return session;
+	}
+
+	HashMatchingSession() { }
+
+	@Override
+	public void onReceivedHashesAdded(long timeBucket, byte[] hashes) {
+		synchronized (pendingLock) {
+			for (int offset = 0; offset < hashes.length; offset += LocHash.HASH_LENGTH) {
+				int size = pendingHashes.size();
+				if (size == pendingTimeBuckets.length) {
+					pendingTimeBuckets = Arrays.copyOf(pendingTimeBuckets, size << 1);
+				}
+				pendingTimeBuckets[size] = timeBucket;
+				pendingHashes.add(hashes, offset);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of distinct hashes held by this session
+	 */
+	public int size() {
+		mergePending();
+		return index.size();
+	}
+
+	/**
+	 * @return the hashes of {@code infectedHashes} received in a time bucket within {@code [fromTime, untilTime)}
+	 */
+	public LocHashList match(LocHashSet infectedHashes, long fromTime, long untilTime) {
+		mergePending();
+		LocHashList matchedHashes = new LocHashList();
+		for (int i = 0; i < index.size(); i++) {
+			long timeBucket = index.getTimeBucket(i);
+			if (timeBucket >= fromTime && timeBucket < untilTime &&
+					infectedHashes.contains(index.getHigh(i), index.getLow(i))) {
+				matchedHashes.add(index.getHigh(i), index.getLow(i));
+			}
+		}
+		return matchedHashes;
+	}
+
+	/**
+	 * Probes every hash of {@code infectedHashes} in the index of the session.
+	 *
+	 * @return the hashes of {@code infectedHashes} received in a time bucket within {@code [fromTime, untilTime)}
+	 */
+	public LocHashList match(LocHashStream infectedHashes, long fromTime, long untilTime) throws IOException {
+		mergePending();
+		LocHashList matchedHashes = new LocHashList();
+		while (infectedHashes.next()) {
+			if (contains(infectedHashes.high(), infectedHashes.low(), fromTime, untilTime)) {
+				matchedHashes.add(infectedHashes.high(), infectedHashes.low());
+			}
+		}
+		return matchedHashes;
+	}
+
+	/**
+	 * Merges {@code sortedInfectedHashes} with the sorted hashes of the session and only checks the time bucket of the
+	 * hashes in common.
+	 *
+	 * @param sortedInfectedHashes stream for which {@link LocHashStream#isSorted()} holds
+	 * @return the hashes of {@code sortedInfectedHashes} received in a time bucket within {@code [fromTime, untilTime)}
+	 */
+	public LocHashList matchSorted(LocHashStream sortedInfectedHashes, long fromTime, long untilTime)
+			throws IOException {
+		mergePending();
+		if (sortedHashes == null || sortedHashes.size() < index.size()) {
+			sortedHashes = new LocHashList(index.size());
+			for (int i = 0; i < index.size(); i++) {
+				sortedHashes.add(index.getHigh(i), index.getLow(i));
+			}
+			sortedHashes.sortDistinct();
+			sortCount++;
+		}
+		LocHashList commonHashes = new LocHashList();
+		SortedMergeMatcher.countMatches(sortedHashes, sortedInfectedHashes, commonHashes);
+		LocHashList matchedHashes = new LocHashList(commonHashes.size());
+		for (int i = 0; i < commonHashes.size(); i++) {
+			if (contains(commonHashes.getHigh(i), commonHashes.getLow(i), fromTime, untilTime)) {
+				matchedHashes.add(commonHashes.getHigh(i), commonHashes.getLow(i));
+			}
+		}
+		return matchedHashes;
+	}
+
+	/**
+	 * @return how often the sorted hashes were built, they are only sorted again after new hashes were received
+	 */
+	int getSortCount() {
+		return sortCount;
+	}
+
+	@Override
+	public void close() {
+		Database.removeReceivedHashListener(this);
+	}
+
+	private boolean contains(long high, int low, long fromTime, long untilTime) {
+		long timeBucket = index.getTimeBucket(high, low);
+		return timeBucket != LocHashTimeIndex.NO_TIME_BUCKET && timeBucket >= fromTime && timeBucket < untilTime;
+	}
+
+	private void mergePending() {
+		LocHashList hashes;
+		long[] timeBuckets;
+		synchronized (pendingLock) {
+			if (pendingHashes.isEmpty()) {
+				return;
+			}
+			hashes = pendingHashes;
+			timeBuckets = pendingTimeBuckets;
+			pendingHashes = new LocHashList();
+			pendingTimeBuckets = new long[16];
+		}
+		for (int i = 0; i < hashes.size(); i++) {
+			index.add(hashes.getHigh(i), hashes.getLow(i), timeBuckets[i]);
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.matching;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+
+import org.dpppt.android.sdk.internal.database.Database;
+import org.dpppt.android.sdk.internal.database.ReceivedHashListener;
+import org.dpppt.android.sdk.internal.logger.Logger;
+
+/**
+ * Matches newly received hashes against the buckets kept in the {@link ExposedHashStore} as soon as they are
+ * written, so a contact recorded after the bucket reporting it was downloaded is detected without waiting for the
+ * next sync. This happens when a handshake is recorded with a location fix from before the release of the bucket.
+ * Only the new hashes are probed, and only against buckets released after their time bucket. Matches are recorded
+ * as exposure days the same way as the matches of a sync.
+ */
+public class IncrementalMatcher implements ReceivedHashListener {
+
+	private static final String TAG = "IncrementalMatcher";
+
+	private static IncrementalMatcher instance;
+
+	private final Database database;
+	private final ExposedHashStore exposedHashStore;
+
+	public static synchronized void register(@NonNull Context context) {
+		if (instance == null) {
+			instance = new IncrementalMatcher(new Database(context.getApplicationContext()),
+					ExposedHashStore.getInstance(context));
+			Database.addReceivedHashListener(instance);
+		}
+	}
+
+	IncrementalMatcher(Database database, ExposedHashStore exposedHashStore) {
+		this.database = database;
+		this.exposedHashStore = exposedHashStore;
+	}
+
+	@Override
+	public void onReceivedHashesAdded(long timeBucket, byte[] hashes) {
+		LocHashList matchedHashes = new LocHashList();
+		try {
+			for (int offset = 0; offset < hashes.length; offset += LocHash.HASH_LENGTH) {
+				long high = LocHash.readHigh(hashes, offset);
+				int low = LocHash.readLow(hashes, offset);
+				if (exposedHashStore.count(high, low, timeBucket) > 0) {
+					matchedHashes.add(high, low);
+				}
+			}
+		} catch (IOException e) {
+			Logger.e(TAG, e);
+			return;
+		}
+		if (!matchedHashes.isEmpty()) {
+			Logger.i(TAG, matchedHashes.size() + " new received hashes found in retained buckets");
+			database.addHashExposures(matchedHashes);
+		}
+	}
+
+}
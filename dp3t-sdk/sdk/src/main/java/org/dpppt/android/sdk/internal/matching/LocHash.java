@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.matching;
+
+import java.util.ArrayList;
+
+/**
+ * Helpers for the truncated location hashes produced by {@code CryptoModule}. A hash consists of
+ * {@link #HASH_LENGTH} bytes which are packed into a {@code long} holding the first eight bytes
+ * (big endian) and an {@code int} holding the remaining two bytes as an unsigned value.
+ */
+public final class LocHash {
+
+	public static final int HASH_LENGTH = 10;
+	public static final int HEX_LENGTH = 2 * HASH_LENGTH;
+
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+	public static long readHigh(byte[] data, int offset) {
+		long high = 0;
+		for (int i = 0; i < 8; i++) {
+			high = (high << 8) | (data[offset + i] & 0xFF);
+		}
+		return high;
+	}
+
+	public static int readLow(byte[] data, int offset) {
+		return ((data[offset + 8] & 0xFF) << 8) | (data[offset + 9] & 0xFF);
+	}
+
+	public static void write(long high, int low, byte[] target, int offset) {
+		for (int i = 7; i >= 0; i--) {
+			target[offset + i] = (byte) high;
+			high >>>= 8;
+		}
+		target[offset + 8] = (byte) (low >>> 8);
+		target[offset + 9] = (byte) low;
+	}
+
+	public static long parseHigh(CharSequence hex) {
+		checkHexLength(hex);
+		long high = 0;
+		for (int i = 0; i < 16; i++) {
+			high = (high << 4) | hexValue(hex.charAt(i));
+		}
+		return high;
+	}
+
+	public static int parseLow(CharSequence hex) {
+		checkHexLength(hex);
+		int low = 0;
+		for (int i = 16; i < HEX_LENGTH; i++) {
+			low = (low << 4) | hexValue(hex.charAt(i));
+		}
+		return low;
+	}
+
+	public static long parseHigh(byte[] hexAscii, int offset) {
+		long high = 0;
+		for (int i = 0; i < 16; i++) {
+			high = (high << 4) | hexValue((char) hexAscii[offset + i]);
+		}
+		return high;
+	}
+
+	public static int parseLow(byte[] hexAscii, int offset) {
+		int low = 0;
+		for (int i = 16; i < HEX_LENGTH; i++) {
+			low = (low << 4) | hexValue((char) hexAscii[offset + i]);
+		}
+		return low;
+	}
+
+	public static String toHex(long high, int low) {
+		char[] chars = new char[HEX_LENGTH];
+		for (int i = 15; i >= 0; i--) {
+			chars[i] = HEX_DIGITS[(int) (high & 0xF)];
+			high >>>= 4;
+		}
+		for (int i = HEX_LENGTH - 1; i >= 16; i--) {
+			chars[i] = HEX_DIGITS[low & 0xF];
+			low >>>= 4;
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * @param packed hashes stored back to back, as written by {@link #write(long, int, byte[], int)}
+	 */
+	public static ArrayList<String> toHexList(byte[] packed) {
+		ArrayList<String> hexHashes = new ArrayList<>(packed.length / HASH_LENGTH);
+		for (int offset = 0; offset + HASH_LENGTH <= packed.length; offset += HASH_LENGTH) {
+			hexHashes.add(toHex(readHigh(packed, offset), readLow(packed, offset)));
+		}
+		return hexHashes;
+	}
+
+	/**
+	 * Order of the sorted wire formats: unsigned by the high part, then by the low part.
+	 */
+	public static int compare(long high1, int low1, long high2, int low2) {
+		int c = Long.compare(high1 ^ Long.MIN_VALUE, high2 ^ Long.MIN_VALUE);
+		return c != 0 ? c : Integer.compare(low1, low2);
+	}
+
+	/**
+	 * Spreads the bits of a packed hash so that it can be used to index open addressed tables, even if the
+	 * hashes were not produced by AES (e.g. test data).
+	 */
+	static int mix(long high, int low) {
+		long h = high ^ ((long) low * 0x9E3779B97F4A7C15L);
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+
+	private static void checkHexLength(CharSequence hex) {
+		if (hex.length() != HEX_LENGTH) {
+			throw new IllegalArgumentException("Expected a hash of " + HEX_LENGTH + " hex digits, got " + hex.length());
+		}
+	}
+
+	private static int hexValue(char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		} else if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		} else if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		}
+		throw new IllegalArgumentException("Invalid hex digit '" + c + "'");
+	}
+
+	private LocHash() { }
+
+}
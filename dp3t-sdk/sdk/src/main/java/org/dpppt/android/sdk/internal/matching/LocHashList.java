@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.matching;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of packed location hashes backed by parallel primitive arrays. Can be sorted in the order
+ * used by the sorted wire formats: unsigned by the high part, then by the low part.
+ */
+public class LocHashList {
+
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+
+	private long[] highs;
+	private char[] lows;
+	private int size;
+
+	public LocHashList() {
+		this(16);
+	}
+
+	public LocHashList(int initialCapacity) {
+		highs = new long[Math.max(initialCapacity, 1)];
+		lows = new char[highs.length];
+	}
+
+	public void add(long high, int low) {
+		if (size == highs.length) {
+			int newCapacity = highs.length << 1;
+			highs = Arrays.copyOf(highs, newCapacity);
+			lows = Arrays.copyOf(lows, newCapacity);
+		}
+		highs[size] = high;
+		lows[size] = (char) low;
+		size++;
+	}
+
+	public void add(byte[] data, int offset) {
+		add(LocHash.readHigh(data, offset), LocHash.readLow(data, offset));
+	}
+
+	public long getHigh(int index) {
+		return highs[index];
+	}
+
+	public int getLow(int index) {
+		return lows[index];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Sorts the list and removes duplicates.
+	 */
+	public void sortDistinct() {
+		sort(0, size - 1);
+		if (size < 2) {
+			return;
+		}
+		int last = 0;
+		for (int i = 1; i < size; i++) {
+			if (highs[i] != highs[last] || lows[i] != lows[last]) {
+				last++;
+				highs[last] = highs[i];
+				lows[last] = lows[i];
+			}
+		}
+		size = last + 1;
+	}
+
+	public boolean isSorted() {
+		for (int i = 1; i < size; i++) {
+			if (compare(i - 1, i) > 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public byte[] toPackedArray() {
+		byte[] packed = new byte[size * LocHash.HASH_LENGTH];
+		for (int i = 0; i < size; i++) {
+			LocHash.write(highs[i], lows[i], packed, i * LocHash.HASH_LENGTH);
+		}
+		return packed;
+	}
+
+	public static LocHashList fromPackedArray(byte[] packed) {
+		LocHashList list = new LocHashList(packed.length / LocHash.HASH_LENGTH);
+		for (int offset = 0; offset + LocHash.HASH_LENGTH <= packed.length; offset += LocHash.HASH_LENGTH) {
+			list.add(packed, offset);
+		}
+		return list;
+	}
+
+	private void sort(int from, int to) {
+		while (to - from > INSERTION_SORT_THRESHOLD) {
+			int pivotIndex = medianOfThree(from, (from + to) >>> 1, to);
+			long pivotHigh = highs[pivotIndex];
+			char pivotLow = lows[pivotIndex];
+			// three way partition, so runs of duplicates do not degrade the sort
+			int lower = from;
+			int i = from;
+			int upper = to;
+			while (i <= upper) {
+				int c = LocHash.compare(highs[i], lows[i], pivotHigh, pivotLow);
+				if (c < 0) {
+					swap(lower++, i++);
+				} else if (c > 0) {
+					swap(i, upper--);
+				} else {
+					i++;
+				}
+			}
+			// recurse into the smaller part to bound the stack depth
+			if (lower - from < to - upper) {
+				sort(from, lower - 1);
+				from = upper + 1;
+			} else {
+				sort(upper + 1, to);
+				to = lower - 1;
+			}
+		}
+		for (int i = from + 1; i <= to; i++) {
+			for (int j = i; j > from && compare(j - 1, j) > 0; j--) {
+				swap(j - 1, j);
+			}
+		}
+	}
+
+	private int medianOfThree(int a, int b, int c) {
+		if (compare(a, b) < 0) {
+			if (compare(b, c) < 0) return b;
+			return compare(a, c) < 0 ? c : a;
+		} else {
+			if (compare(a, c) < 0) return a;
+			return compare(b, c) < 0 ? c : b;
+		}
+	}
+
+	private int compare(int i, int j) {
+		return LocHash.compare(highs[i], lows[i], highs[j], lows[j]);
+	}
+
+	private void swap(int i, int j) {
+		long high = highs[i];
+		highs[i] = highs[j];
+		highs[j] = high;
+		char low = lows[i];
+		lows[i] = lows[j];
+		lows[j] = low;
+	}
+
+}
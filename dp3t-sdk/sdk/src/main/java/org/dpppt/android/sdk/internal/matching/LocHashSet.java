@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.matching;
+
+import java.util.Arrays;
+
+import com.google.gson.annotations.JsonAdapter;
+
+/**
+ * Open addressed hash set (linear probing) of packed location hashes. Entries are kept in primitive arrays,
+ * so a set holding a full bucket needs about 11 bytes per slot instead of a {@code String} per hash.
+ */
+@JsonAdapter(LocHashSetJsonAdapter.class)
+public class LocHashSet {
+
+	private static final int MIN_CAPACITY = 16;
+	private static final float LOAD_FACTOR = 0.75f;
+
+	private long[] highs;
+	private char[] lows;
+	private long[] used;
+	private int mask;
+	private int size;
+	private int threshold;
+
+	public LocHashSet() {
+		this(MIN_CAPACITY);
+	}
+
+	public LocHashSet(int expectedSize) {
+		allocate(capacityFor(expectedSize));
+	}
+
+	public boolean add(long high, int low) {
+		if (size >= threshold) {
+			rehash(highs.length << 1);
+		}
+		int slot = LocHash.mix(high, low) & mask;
+		while (isUsed(slot)) {
+			if (highs[slot] == high && lows[slot] == (char) low) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		insertAt(slot, high, (char) low);
+		size++;
+		return true;
+	}
+
+	public boolean contains(long high, int low) {
+		int slot = LocHash.mix(high, low) & mask;
+		while (isUsed(slot)) {
+			if (highs[slot] == high && lows[slot] == (char) low) {
+				return true;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return false;
+	}
+
+	public boolean add(byte[] data, int offset) {
+		return add(LocHash.readHigh(data, offset), LocHash.readLow(data, offset));
+	}
+
+	public boolean contains(byte[] data, int offset) {
+		return contains(LocHash.readHigh(data, offset), LocHash.readLow(data, offset));
+	}
+
+	public boolean addHex(CharSequence hex) {
+		return add(LocHash.parseHigh(hex), LocHash.parseLow(hex));
+	}
+
+	public boolean containsHex(CharSequence hex) {
+		return contains(LocHash.parseHigh(hex), LocHash.parseLow(hex));
+	}
+
+	public LocHashList toList() {
+		LocHashList list = new LocHashList(size);
+		for (int i = 0; i < highs.length; i++) {
+			if (isUsed(i)) {
+				list.add(highs[i], lows[i]);
+			}
+		}
+		return list;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(used, 0L);
+		size = 0;
+	}
+
+	private boolean isUsed(int slot) {
+		return (used[slot >>> 6] & (1L << slot)) != 0;
+	}
+
+	private void insertAt(int slot, long high, char low) {
+		highs[slot] = high;
+		lows[slot] = low;
+		used[slot >>> 6] |= 1L << slot;
+	}
+
+	private void rehash(int newCapacity) {
+		long[] oldHighs = highs;
+		char[] oldLows = lows;
+		long[] oldUsed = used;
+		allocate(newCapacity);
+		for (int i = 0; i < oldHighs.length; i++) {
+			if ((oldUsed[i >>> 6] & (1L << i)) != 0) {
+				int slot = LocHash.mix(oldHighs[i], oldLows[i]) & mask;
+				while (isUsed(slot)) {
+					slot = (slot + 1) & mask;
+				}
+				insertAt(slot, oldHighs[i], oldLows[i]);
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		highs = new long[capacity];
+		lows = new char[capacity];
+		used = new long[(capacity + 63) >>> 6];
+		mask = capacity - 1;
+		threshold = (int) (capacity * LOAD_FACTOR);
+	}
+
+	private static int capacityFor(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity * LOAD_FACTOR <= expectedSize) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+}
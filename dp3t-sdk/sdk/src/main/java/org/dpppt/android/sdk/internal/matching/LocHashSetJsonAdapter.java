@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.matching;
+
+import java.io.IOException;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Reads the JSON array of hex hashes served by the backend directly into a {@link LocHashSet}, so no
+ * intermediate collection of strings is built. A set is written in the same format.
+ */
+class LocHashSetJsonAdapter extends TypeAdapter<LocHashSet> {
+
+	@Override
+	public void write(JsonWriter out, LocHashSet value) throws IOException {
+		if (value == null) {
+			out.nullValue();
+			return;
+		}
+		LocHashList hashes = value.toList();
+		out.beginArray();
+		for (int i = 0; i < hashes.size(); i++) {
+			out.value(LocHash.toHex(hashes.getHigh(i), hashes.getLow(i)));
+		}
+		out.endArray();
+	}
+
+	@Override
+	public LocHashSet read(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		LocHashSet set = new LocHashSet();
+		in.beginArray();
+		while (in.hasNext()) {
+			String hex = in.nextString();
+			try {
+				set.addHex(hex);
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Unexpected hash format " + hex, e);
+			}
+		}
+		in.endArray();
+		return set;
+	}
+
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.matching;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Forward-only cursor over packed location hashes, typically decoded from a response body while it is being
+ * downloaded. The values of {@link #high()} and {@link #low()} are only valid after {@link #next()} returned true.
+ */
+public interface LocHashStream extends Closeable {
+
+	boolean next() throws IOException;
+
+	long high();
+
+	int low();
+
+	/**
+	 * @return true if the hashes are guaranteed to arrive in the order of {@link LocHash#compare}
+	 */
+	default boolean isSorted() {
+		return false;
+	}
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.matching;
+
+import java.util.Arrays;
+
+/**
+ * Hash index of location hashes together with the time bucket each one was computed for. The entries are kept
+ * densely in insertion order and the open addressed table (linear probing) only holds their positions, so the entries
+ * can be iterated without a copy.
+ * <p>
+ * A location hash is computed for its time bucket, so every hash has a single time bucket; should the same hash be
+ * added for another time bucket, the first one is kept.
+ */
+final class LocHashTimeIndex {
+
+	static final long NO_TIME_BUCKET = Long.MIN_VALUE;
+
+	private static final int MIN_CAPACITY = 16;
+	private static final float LOAD_FACTOR = 0.75f;
+
+	private final LocHashList entries = new LocHashList();
+	private long[] timeBuckets = new long[MIN_CAPACITY];
+	// position of the entry plus one, 0 marks a free slot
+	private int[] table;
+	private int mask;
+	private int threshold;
+
+	LocHashTimeIndex() {
+		allocate(MIN_CAPACITY);
+	}
+
+	/**
+	 * @return whether the hash was added, false if it is already contained
+	 */
+	boolean add(long high, int low, long timeBucket) {
+		int slot = LocHash.mix(high, low) & mask;
+		int position;
+		while ((position = table[slot]) != 0) {
+			if (entries.getHigh(position - 1) == high && entries.getLow(position - 1) == (char) low) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		int size = entries.size();
+		if (size == timeBuckets.length) {
+			timeBuckets = Arrays.copyOf(timeBuckets, size << 1);
+		}
+		timeBuckets[size] = timeBucket;
+		entries.add(high, low);
+		table[slot] = size + 1;
+		if (entries.size() > threshold) {
+			rehash(table.length << 1);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the time bucket of the hash, {@link #NO_TIME_BUCKET} if it is not contained
+	 */
+	long getTimeBucket(long high, int low) {
+		int slot = LocHash.mix(high, low) & mask;
+		int position;
+		while ((position = table[slot]) != 0) {
+			if (entries.getHigh(position - 1) == high && entries.getLow(position - 1) == (char) low) {
+				return timeBuckets[position - 1];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return NO_TIME_BUCKET;
+	}
+
+	int size() {
+		return entries.size();
+	}
+
+	long getHigh(int index) {
+		return entries.getHigh(index);
+	}
+
+	int getLow(int index) {
+		return entries.getLow(index);
+	}
+
+	long getTimeBucket(int index) {
+		return timeBuckets[index];
+	}
+
+	private void rehash(int newCapacity) {
+		allocate(newCapacity);
+		for (int i = 0; i < entries.size(); i++) {
+			int slot = LocHash.mix(entries.getHigh(i), entries.getLow(i)) & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = i + 1;
+		}
+	}
+
+	private void allocate(int capacity) {
+		table = new int[capacity];
+		mask = capacity - 1;
+		threshold = (int) (capacity * LOAD_FACTOR);
+	}
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.matching;
+
+import java.io.IOException;
+
+import org.dpppt.android.sdk.internal.logger.Logger;
+
+/**
+ * Passes a stream through unchanged while writing every hash read from it to a segment of the
+ * {@link ExposedHashStore}.
+ */
+public class RecordingLocHashStream implements LocHashStream {
+
+	private static final String TAG = "RecordingLocHashStream";
+
+	private final LocHashStream stream;
+	private final ExposedHashStore.SegmentWriter segment;
+	private boolean recording = true;
+	private boolean complete = false;
+
+	public RecordingLocHashStream(LocHashStream stream, ExposedHashStore.SegmentWriter segment) {
+		this.stream = stream;
+		this.segment = segment;
+	}
+
+	@Override
+	public boolean next() throws IOException {
+		if (!stream.next()) {
+			complete = true;
+			return false;
+		}
+		if (recording) {
+			try {
+				segment.write(stream.high(), stream.low());
+			} catch (IOException e) {
+				// the bucket can still be matched, it just won't be kept
+				Logger.e(TAG, e);
+				recording = false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public long high() {
+		return stream.high();
+	}
+
+	@Override
+	public int low() {
+		return stream.low();
+	}
+
+	@Override
+	public boolean isSorted() {
+		return stream.isSorted();
+	}
+
+	/**
+	 * @return whether the stream has been read to its end and recorded, so the segment holds the whole bucket
+	 */
+	public boolean isComplete() {
+		return complete && recording;
+	}
+
+	/**
+	 * Closes the stream and the segment. The segment is discarded unless it has been committed.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			stream.close();
+		} finally {
+			segment.close();
+		}
+	}
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2020 Ubique Innovation AG <https://www.ubique.ch>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ *
+ * SPDX-License-Identifier: MPL-2.0
+ */
+package org.dpppt.android.sdk.internal.matching;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+
+import org.dpppt.android.sdk.internal.logger.Logger;
+
+/**
+ * Counts the hashes two sorted sequences have in common in a single linear pass, without building a hash set.
+ * <p>
+ * The order of the remote hashes is checked while merging. Once a hash does not follow its predecessor strictly,
+ * the merge can no longer see matches it has already passed, so it falls back to looking up the current and all
+ * remaining remote hashes in the sorted local hashes by binary search.
+ */
+public final class SortedMergeMatcher {
+
+	private static final String TAG = "SortedMergeMatcher";
+
+	/**
+	 * @param sortedLocal hashes sorted and deduplicated with {@link LocHashList#sortDistinct()}
+	 * @param sortedRemote stream for which {@link LocHashStream#isSorted()} holds
+	 * @return the number of remote hashes contained in {@code sortedLocal}
+	 */
+	public static int countMatches(LocHashList sortedLocal, LocHashStream sortedRemote) throws IOException {
+		return countMatches(sortedLocal, sortedRemote, null);
+	}
+
+	/**
+	 * @param matches if not null, every remote hash contained in {@code sortedLocal} is added to it
+	 */
+	public static int countMatches(LocHashList sortedLocal, LocHashStream sortedRemote, @Nullable LocHashList matches)
+			throws IOException {
+		if (!sortedRemote.isSorted()) {
+			throw new IllegalArgumentException("remote hashes must be sorted");
+		}
+		int count = 0;
+		int localIndex = 0;
+		int localSize = sortedLocal.size();
+		int remoteIndex = 0;
+		long previousHigh = 0;
+		int previousLow = 0;
+		while (sortedRemote.next()) {
+			long remoteHigh = sortedRemote.high();
+			int remoteLow = sortedRemote.low();
+			if (remoteIndex > 0 && LocHash.compare(previousHigh, previousLow, remoteHigh, remoteLow) >= 0) {
+				Logger.w(TAG, "remote hash " + remoteIndex + " is out of order, probing the remaining hashes");
+				return count + countProbed(sortedLocal, sortedRemote, matches);
+			}
+			previousHigh = remoteHigh;
+			previousLow = remoteLow;
+			remoteIndex++;
+			int c;
+			while (localIndex < localSize &&
+					(c = LocHash.compare(sortedLocal.getHigh(localIndex), sortedLocal.getLow(localIndex), remoteHigh,
+							remoteLow)) <= 0) {
+				if (c == 0) {
+					count++;
+					if (matches != null) {
+						matches.add(remoteHigh, remoteLow);
+					}
+				}
+				localIndex++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Counts the current and all remaining hashes of {@code remote} which are contained in {@code sortedLocal}.
+	 */
+	private static int countProbed(LocHashList sortedLocal, LocHashStream remote, @Nullable LocHashList matches)
+			throws IOException {
+		int count = 0;
+		do {
+			if (containsSorted(sortedLocal, remote.high(), remote.low())) {
+				count++;
+				if (matches != null) {
+					matches.add(remote.high(), remote.low());
+				}
+			}
+		} while (remote.next());
+		return count;
+	}
+
+	private static boolean containsSorted(LocHashList sortedLocal, long high, int low) {
+		int from = 0;
+		int to = sortedLocal.size() - 1;
+		while (from <= to) {
+			int middle = (from + to) >>> 1;
+			int c = LocHash.compare(sortedLocal.getHigh(middle), sortedLocal.getLow(middle), high, low);
+			if (c < 0) {
+				from = middle + 1;
+			} else if (c > 0) {
+				to = middle - 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private SortedMergeMatcher() { }
+
+}
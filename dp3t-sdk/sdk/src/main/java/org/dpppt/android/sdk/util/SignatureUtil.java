@@ -33,6 +33,10 @@ public class SignatureUtil {
 
 	public static final String HTTP_HEADER_JWS = "signature";
 	public static final String HASH_ALGO = "SHA-256";
+	/**
+	 * Response carrying a sequence of individually signed buckets instead of one body signed in the JWS header.
+	 */
+	public static final String MEDIA_TYPE_SIGNED_BUCKET_FRAMES = "application/x-dp3t-signed-bucket-frames";
 
 	private static final String JWS_CLAIM_CONTENT_HASH = "content-hash";
 